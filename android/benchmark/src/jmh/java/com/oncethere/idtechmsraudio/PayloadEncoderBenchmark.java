@@ -0,0 +1,50 @@
+package com.oncethere.idtechmsraudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class PayloadEncoderBenchmark {
+  @Param({"ENCRYPTED_AES", "ENCRYPTED_TDES", "UNENCRYPTED_ISO"})
+  public String frame;
+
+  private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+
+  private byte[] cardData;
+
+  @Setup
+  public void setup() throws Exception {
+    cardData = (byte[]) SwipeFrames.class.getDeclaredField(frame).get(null);
+  }
+
+  // Same code path as IDTechMSRAudioModule.bytesToHex
+  @Benchmark
+  public String bytesToHex() {
+    return PayloadEncoder.bytesToHex(cardData);
+  }
+
+  // The nibble at a time, fresh char[] encoder the pair table replaced
+  @Benchmark
+  public String bytesToHexNibbles() {
+    char[] hexChars = new char[cardData.length * 2];
+    for (int j = 0; j < cardData.length; j++) {
+      int v = cardData[j] & 0xFF;
+      hexChars[j * 2] = HEX_ARRAY[v >>> 4];
+      hexChars[j * 2 + 1] = HEX_ARRAY[v & 0x0F];
+    }
+    return new String(hexChars);
+  }
+
+  @Benchmark
+  public String bytesToBase64() {
+    return PayloadEncoder.bytesToBase64(cardData, 0, cardData.length);
+  }
+
+  @Benchmark
+  public String bytesToLatin1() {
+    return PayloadEncoder.bytesToLatin1(cardData, 0, cardData.length);
+  }
+}
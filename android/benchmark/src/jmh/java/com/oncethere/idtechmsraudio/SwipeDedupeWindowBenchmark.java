@@ -0,0 +1,36 @@
+package com.oncethere.idtechmsraudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class SwipeDedupeWindowBenchmark {
+  @Param({"ENCRYPTED_AES", "UNENCRYPTED_ISO"})
+  public String frame;
+
+  private byte[] cardData;
+  private final UmCardDataView view = new UmCardDataView();
+  private final SwipeDedupeWindow window = new SwipeDedupeWindow();
+  private long now = 0;
+
+  @Setup
+  public void setup() throws Exception {
+    cardData = (byte[]) SwipeFrames.class.getDeclaredField(frame).get(null);
+    view.parse(cardData);
+  }
+
+  @Benchmark
+  public long hash() {
+    return SwipeDedupeWindow.hashOf(view, cardData, cardData.length);
+  }
+
+  // Hash and look up in a full window, the cost the dedupe stage adds per swipe
+  @Benchmark
+  public boolean isDuplicate() {
+    now += 1000000;
+    return window.isDuplicate(SwipeDedupeWindow.hashOf(view, cardData, cardData.length) + now, now, 1000000000L);
+  }
+}
@@ -0,0 +1,71 @@
+package com.oncethere.idtechmsraudio;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class SwipeEventsBenchmark {
+  @Param({"ENCRYPTED_AES", "ENCRYPTED_TDES", "UNENCRYPTED_ISO"})
+  public String frame;
+
+  private byte[] cardData;
+  private final UmCardDataView view = new UmCardDataView();
+
+  @Setup
+  public void setup() throws Exception {
+    cardData = (byte[]) SwipeFrames.class.getDeclaredField(frame).get(null);
+  }
+
+  // Builds the swipe_received event the module sends over the bridge
+  @Benchmark
+  public Map<String, Object> cardDataEvent() {
+    MapPayload result = new MapPayload();
+    SwipeEvents.writeCardData(cardData, result);
+    return result.map;
+  }
+
+  // Builds the structured swipe_received event, parsing included
+  @Benchmark
+  public Map<String, Object> parsedCardDataEvent() {
+    MapPayload result = new MapPayload();
+    view.parse(cardData);
+    SwipeEvents.writeParsedCardData(view, false, result);
+    return result.map;
+  }
+
+  // Stand-in for WritableMap, which is a HashMap on the native side as well
+  static final class MapPayload implements EventPayload {
+    final Map<String, Object> map = new HashMap<>();
+
+    public void putString(String key, String value) {
+      map.put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+      map.put(key, value);
+    }
+
+    public void putDouble(String key, double value) {
+      map.put(key, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+      map.put(key, value);
+    }
+
+    public void putNull(String key) {
+      map.put(key, null);
+    }
+
+    public void putStringArray(String key, String[] values) {
+      map.put(key, Arrays.asList(values));
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Realistic reader output used as benchmark input.
+final class SwipeFrames {
+  private SwipeFrames() {}
+
+  // Encrypting reader, AES, masked tracks 1 and 2, serial number and KSN
+  static final byte[] ENCRYPTED_AES = hex(
+      "021201801F4F28009383252A353230332A2A2A2A2A2A2A2A373230355E4142524148414D53454E2F5354455048454E20202020202020205E3138"
+    + "30382A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A3F2A3B353230332A2A2A2A2A2A2A2A373230353D313830382A2A2A2A2A2A"
+    + "2A2A2A2A2A2A2A2A2A2A3F2A66AE219667CDAD7B1C8F794D4980F9E39CB12C8D76CC8EEE3B9A5BF7502EF740334EA67B5733FE190C16667EE44011"
+    + "F27A4A23B80B894759F085C5C1488CBDF5C97865E7B5DC422359C7816A087D92A499526F1F4E01FE246254C6E8B53EE22DE1F5B93C448DD73AAE8A"
+    + "DC21FC5DFD142A6A8A347CC1F9DF9D231EAC2E8D56BB343233543131333836376299491457002060010B5CBE03");
+
+  // Encrypting reader, TDES, masked tracks 1 and 2, encrypted tracks 1-3 and KSN
+  static final byte[] ENCRYPTED_TDES = hex(
+      "029801803F48236B03BF252A343236362A2A2A2A2A2A2A2A393939395E42555348204A522F47454F52474520572E4D525E2A2A2A2A2A2A2A2A2A2A"
+    + "2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A3F2A3B343236362A2A2A2A2A2A2A2A393939393D2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A3F2ADA"
+    + "7F2A52BD3F6DD8B96C50FC39C7E6AF22F06ED1F033BE0FB23D6BD33DC5A1F808512F7AE18D47A60CC3F4559B1B093563BE7E07459072ABF8FAAB53"
+    + "38C6CC8815FF87797AE3A7BEAB3B10A3FBC230FBFB941FAC9E82649981AE79F2632156E775A06AEDAFAF6F0A184318C5209E55AD44A9CCF6A78AC2"
+    + "40F791B63284E15B4019102BA6C505814B585816CA3C2D2F42A99B1B9773EF1B116E005B7CD8681860D174E6AD316A0ECDBC687115FC89360AEE7E"
+    + "430140A7B791589CCAADB6D6872B78433C3A25DA9DDAE83F12FEFAB530CE405B701131D2FBAAD970248A456000933418AC88F65E1DB7ED4D10973F"
+    + "99DFC8463FF6DF113B6226C4898A9D355057ECAF11A5598F02CA31688861C157C1CE2E0F72CE0F3BB598A614EAABB16299490119000000000206E2"
+    + "03");
+
+  // Non-encrypting reader, ISO tracks 1, 2 and 3
+  static final byte[] UNENCRYPTED_ISO = ascii(
+      "%B4111111111111111^CARDHOLDER/TEST A^2512101000000000000000000000000?"
+    + ";4111111111111111=25121010000000000000?"
+    + ";011234567890123445=724724100000000000030300XXXX040400099010=********************==1=000000000000000?\r");
+
+  // UNENCRYPTED_ISO with a stray byte between tracks 2 and 3, invalid near the end
+  static final byte[] MALFORMED_ISO = ascii(
+      "%B4111111111111111^CARDHOLDER/TEST A^2512101000000000000000000000000?"
+    + ";4111111111111111=25121010000000000000?X"
+    + ";011234567890123445=724724100000000000030300XXXX040400099010=********************==1=000000000000000?\r");
+
+  // UNENCRYPTED_ISO cut off inside track 3
+  static final byte[] TRUNCATED_ISO = Arrays.copyOf(UNENCRYPTED_ISO, UNENCRYPTED_ISO.length - 20);
+
+  // Non-encrypting reader, JIS II track
+  static final byte[] UNENCRYPTED_JIS = jis("2000012345678901234567890123456789012345678901234567890123456789012");
+
+  static byte[] hex(String s) {
+    byte[] bytes = new byte[s.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+    }
+    return bytes;
+  }
+
+  static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] jis(String track) {
+    byte[] body = ascii(track);
+    byte[] bytes = new byte[body.length + 3];
+    bytes[0] = 0x7F;
+    System.arraycopy(body, 0, bytes, 1, body.length);
+    bytes[body.length + 1] = 0x7F;
+    bytes[body.length + 2] = 0x0D;
+    return bytes;
+  }
+}
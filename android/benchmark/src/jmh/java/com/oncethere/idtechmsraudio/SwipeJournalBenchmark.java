@@ -0,0 +1,49 @@
+package com.oncethere.idtechmsraudio;
+
+import java.io.File;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+@State(Scope.Thread)
+public class SwipeJournalBenchmark {
+  private final byte[] cardData = SwipeFrames.ENCRYPTED_AES;
+  private File file;
+  private SwipeJournal journal;
+  private long acknowledged = 0;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    file = File.createTempFile("swipe-journal", ".bin");
+    journal = new SwipeJournal(file);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    file.delete();
+  }
+
+  // What the journal stage adds to a swipe
+  @Benchmark
+  public long append() {
+    long seq = journal.append((byte) 0, cardData, 0, cardData.length);
+    if (seq < 0) {
+      //full; delivery catching up, off the measured path in practice
+      while (journal.getPending() > 0) {
+        journal.acknowledge(++acknowledged);
+      }
+      seq = journal.append((byte) 0, cardData, 0, cardData.length);
+    }
+    return seq;
+  }
+
+  // Appending and acknowledging right away, the steady state with a reachable backend
+  @Benchmark
+  public boolean appendAndAcknowledge() {
+    return journal.acknowledge(journal.append((byte) 0, cardData, 0, cardData.length));
+  }
+}
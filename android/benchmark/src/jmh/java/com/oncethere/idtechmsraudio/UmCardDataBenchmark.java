@@ -0,0 +1,48 @@
+package com.oncethere.idtechmsraudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class UmCardDataBenchmark {
+  @Param({"ENCRYPTED_AES", "ENCRYPTED_TDES", "UNENCRYPTED_ISO", "UNENCRYPTED_JIS"})
+  public String frame;
+
+  private byte[] cardData;
+  private final UmCardDataView view = new UmCardDataView();
+
+  @Setup
+  public void setup() throws Exception {
+    cardData = (byte[]) SwipeFrames.class.getDeclaredField(frame).get(null);
+  }
+
+  @Benchmark
+  public UmCardData parseCopying() {
+    return new UmCardData(cardData);
+  }
+
+  // Header checks only
+  @Benchmark
+  public boolean lazyIsEncrypted() {
+    return new LazyUmCardData(cardData).isEncrypted();
+  }
+
+  // What a caller that only drops bad reads pays
+  @Benchmark
+  public boolean lazyIsValid() {
+    return new LazyUmCardData(cardData).isValid();
+  }
+
+  @Benchmark
+  public byte[] lazyTrack2() {
+    return new LazyUmCardData(cardData).getTrack2();
+  }
+
+  @Benchmark
+  public boolean parseView() {
+    return view.parse(cardData);
+  }
+}
@@ -0,0 +1,50 @@
+package com.oncethere.idtechmsraudio;
+
+import java.io.ByteArrayOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+public class UmFrameAssemblerBenchmark {
+  // Size of the chunks the stream is fed in
+  @Param({"16", "256", "4096"})
+  public int chunkSize;
+
+  private byte[] stream;
+  private UmFrameAssembler assembler;
+  private Blackhole blackhole;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    this.blackhole = blackhole;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < 16; i++) {
+      out.write(SwipeFrames.ENCRYPTED_AES, 0, SwipeFrames.ENCRYPTED_AES.length);
+      out.write(SwipeFrames.ENCRYPTED_TDES, 0, SwipeFrames.ENCRYPTED_TDES.length);
+      out.write(SwipeFrames.UNENCRYPTED_ISO, 0, SwipeFrames.UNENCRYPTED_ISO.length);
+      //line noise between frames
+      out.write(0);
+      out.write(0x0A);
+    }
+    stream = out.toByteArray();
+    assembler = new UmFrameAssembler(new UmFrameAssembler.FrameListener() {
+      public void onFrame(byte[] frame, int offset, int length) {
+        UmFrameAssemblerBenchmark.this.blackhole.consume(length);
+      }
+    });
+  }
+
+  // 48 frames per op
+  @Benchmark
+  public long feedStream() {
+    for (int i = 0; i < stream.length; i += chunkSize) {
+      assembler.feed(stream, i, Math.min(chunkSize, stream.length - i));
+    }
+    return assembler.getFrameCount();
+  }
+}
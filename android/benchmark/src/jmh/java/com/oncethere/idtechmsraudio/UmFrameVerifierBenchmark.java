@@ -0,0 +1,63 @@
+package com.oncethere.idtechmsraudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Word at a time verify() against the byte loop it replaced, on real frames and on large synthetic ones.
+@State(Scope.Thread)
+public class UmFrameVerifierBenchmark {
+  @Param({"ENCRYPTED_AES", "ENCRYPTED_TDES", "SYNTHETIC_1K", "SYNTHETIC_16K"})
+  public String frame;
+
+  private byte[] cardData;
+  private ByteBuffer buffer;
+
+  @Setup
+  public void setup() throws Exception {
+    if (frame.startsWith("SYNTHETIC_")) {
+      cardData = synthetic(Integer.parseInt(frame.substring("SYNTHETIC_".length(), frame.length() - 1)) * 1024);
+    } else {
+      cardData = (byte[]) SwipeFrames.class.getDeclaredField(frame).get(null);
+    }
+    buffer = ByteBuffer.wrap(cardData);
+  }
+
+  // Valid frame with a random payload of payloadLength bytes
+  static byte[] synthetic(int payloadLength) {
+    byte[] data = new byte[payloadLength + UmFrameVerifier.OVERHEAD];
+    new Random(42).nextBytes(data);
+    data[0] = UmFrameVerifier.STX;
+    data[1] = (byte) payloadLength;
+    data[2] = (byte) (payloadLength >>> 8);
+    int xor = 0, sum = 0;
+    for (int i = 3; i < 3 + payloadLength; i++) {
+      xor ^= data[i];
+      sum += data[i];
+    }
+    data[data.length - 3] = (byte) xor;
+    data[data.length - 2] = (byte) sum;
+    data[data.length - 1] = UmFrameVerifier.ETX;
+    return data;
+  }
+
+  @Benchmark
+  public boolean bytewise() {
+    return UmFrameVerifier.verifyBytewise(cardData, 0, cardData.length);
+  }
+
+  @Benchmark
+  public boolean wordwise() {
+    return UmFrameVerifier.verify(cardData, 0, cardData.length);
+  }
+
+  @Benchmark
+  public boolean wordwiseBuffer() {
+    return UmFrameVerifier.verify(buffer, 0, cardData.length);
+  }
+}
@@ -0,0 +1,28 @@
+package com.oncethere.idtechmsraudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class UmTrackFieldsBenchmark {
+  @Param({"ENCRYPTED_AES", "UNENCRYPTED_ISO"})
+  public String frame;
+
+  private final UmCardDataView view = new UmCardDataView();
+  private final UmTrackFields fields = new UmTrackFields();
+  private final char[] pan = new char[UmTrackFields.MAX_PAN_LENGTH];
+
+  @Setup
+  public void setup() throws Exception {
+    view.parse((byte[]) SwipeFrames.class.getDeclaredField(frame).get(null));
+  }
+
+  @Benchmark
+  public int extract() {
+    fields.extract(view);
+    return fields.copyPan(pan, 0);
+  }
+}
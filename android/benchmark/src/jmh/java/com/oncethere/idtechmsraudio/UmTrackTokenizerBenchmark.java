@@ -0,0 +1,74 @@
+package com.oncethere.idtechmsraudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class UmTrackTokenizerBenchmark {
+  @Param({"UNENCRYPTED_ISO", "UNENCRYPTED_JIS", "MALFORMED_ISO", "TRUNCATED_ISO"})
+  public String frame;
+
+  private byte[] cardData;
+  private final UmTrackTokenizer tokenizer = new UmTrackTokenizer();
+  private final int[] regions = new int[UmTrackTokenizer.MAX_TRACKS * 2];
+
+  @Setup
+  public void setup() throws Exception {
+    cardData = (byte[]) SwipeFrames.class.getDeclaredField(frame).get(null);
+  }
+
+  @Benchmark
+  public boolean tokenizer() {
+    return tokenizer.tokenize(cardData, 0, cardData.length);
+  }
+
+  @Benchmark
+  public boolean stateMachine() {
+    return parseUnencrypted(cardData, 0, cardData.length, regions);
+  }
+
+  // How UmCardDataView split unencrypted frames before UmTrackTokenizer
+  private static boolean parseUnencrypted(byte[] bytes, int offset, int length, int[] regions) {
+    final int len = offset + length;
+
+    boolean ps_isOutsideTrack = true; //parser state: true if outside of track, false if inside
+    boolean ps_isISO = false; //ISO or JIS track
+    int ps_trackStart = offset; //starting point of this track
+    int ps_tracksI = 0; //track index
+    for (int i = offset; i < len; i++) {
+      final byte b = bytes[i];
+      if (ps_isOutsideTrack) {
+        if (b == 0x25 || b == 0x3B) {
+          ps_isOutsideTrack = false;
+          ps_isISO = true;
+          ps_trackStart = i;
+        } else if (b == 0x7F) {
+          ps_isOutsideTrack = false;
+          ps_isISO = false;
+          ps_trackStart = i;
+        } else if (b == 0x0D) {
+          //a trailing carriage return ends the data and the whole thing is valid.
+          return i == len - 1;
+        }
+        //unexpected char when expecting a track
+        else
+          return false;
+      } else {
+        //skip track content
+        if (ps_isISO ? (b != 0x3F) : (b != 0x7F))
+          continue;
+        //track ended
+        if (ps_tracksI < 3) {
+          regions[ps_tracksI * 2] = ps_trackStart;
+          regions[ps_tracksI * 2 + 1] = i + 1 - ps_trackStart;
+        }
+        ps_tracksI++;
+        ps_isOutsideTrack = true;
+      }
+    }
+    return false;
+  }
+}
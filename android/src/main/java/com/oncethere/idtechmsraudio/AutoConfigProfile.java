@@ -8,21 +8,32 @@
 package com.oncethere.idtechmsraudio;
 
 import IDTech.MSR.XMLManager.StructConfigParameters;
-import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
 
 import java.io.Serializable;
 import android.content.Context;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.ObjectInputStream;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
 
 
 public class AutoConfigProfile implements Serializable {
-  static final String AUTO_CONFIG_FILENAME = "umAutoConfigProfile";
+  // Java serialization is only used to read files written by older versions.
+  // The id is the one computed for the original class, so those files still load.
+  private static final long serialVersionUID = -832310688107175220L;
+  static final String AUTO_CONFIG_FILENAME = "umAutoConfigProfile"; //legacy, Java serialized
+
+  // Binary record: magic, version, payload length, payload, CRC32 of everything before it. Big endian.
+  static final String AUTO_CONFIG_BINARY_FILENAME = "umAutoConfigProfile.bin";
+  static final int RECORD_MAGIC = 0x554D4143; //"UMAC"
+  static final short RECORD_VERSION = 1;
+  static final int PAYLOAD_LENGTH = 43;
+  static final int RECORD_LENGTH = 4 + 2 + 2 + PAYLOAD_LENGTH + 4;
 
   public short DirectionOutputWave;
   public int   FrequencyInput;
@@ -41,8 +52,82 @@ public class AutoConfigProfile implements Serializable {
   public short UseVoiceRecognition;
   public short VolumeLevelAdjust;
 
-  // Serializes auto config object and saves it to a file
-  public boolean saveAutoConfigProfile(StructConfigParameters profile, ReactApplicationContext ctx) {
+  // Saves the profile as a binary record, atomically replacing any previous one
+  public boolean saveAutoConfigProfile(StructConfigParameters profile, Context ctx) {
+    setProfile(profile);
+
+    File file = new File(ctx.getFilesDir(), AUTO_CONFIG_BINARY_FILENAME);
+    try {
+        writeAtomically(file, toBytes());
+    } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+    }
+
+    return true;
+  }
+
+  // Loads the saved profile, migrating a legacy serialized one the first time. Returns null if there is none.
+  public StructConfigParameters loadAutoConfigProfile(Context ctx) {
+    File file = new File(ctx.getFilesDir(), AUTO_CONFIG_BINARY_FILENAME);
+    if (file.exists()) {
+      try {
+          AutoConfigProfile autoConfig = fromBytes(readFully(file, RECORD_LENGTH));
+          if (autoConfig != null) {
+            return autoConfig.toProfile();
+          }
+      } catch (IOException e) {
+          e.printStackTrace();
+      }
+      return null;
+    }
+
+    return migrateLegacyProfile(ctx, file);
+  }
+
+  private StructConfigParameters migrateLegacyProfile(Context ctx, File file) {
+    File legacyFile = ctx.getFileStreamPath(AUTO_CONFIG_FILENAME);
+    if (legacyFile == null || !legacyFile.exists()) {
+      return null;
+    }
+
+    AutoConfigProfile autoConfig = null;
+    try {
+        FileInputStream fileInputStream = new FileInputStream(legacyFile);
+        try {
+          ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
+          autoConfig = (AutoConfigProfile) objectInputStream.readObject();
+          objectInputStream.close();
+        } finally {
+          fileInputStream.close();
+        }
+    } catch (IOException e) {
+        e.printStackTrace();
+    }
+    catch (ClassNotFoundException e) {
+        e.printStackTrace();
+    }
+    if (autoConfig == null) {
+      return null;
+    }
+
+    try {
+        writeAtomically(file, autoConfig.toBytes());
+        ctx.deleteFile(AUTO_CONFIG_FILENAME);
+    } catch (IOException e) {
+        //keep the legacy file and try again next time
+        e.printStackTrace();
+    }
+    return autoConfig.toProfile();
+  }
+
+  // Removes the saved profile in both the binary and the legacy format
+  public static void deleteAutoConfigProfile(Context ctx) {
+    new File(ctx.getFilesDir(), AUTO_CONFIG_BINARY_FILENAME).delete();
+    ctx.deleteFile(AUTO_CONFIG_FILENAME);
+  }
+
+  public void setProfile(StructConfigParameters profile) {
     DirectionOutputWave = profile.getDirectionOutputWave();
     FrequencyInput = profile.getFrequenceInput();
     FrequencyOutput = profile.getFrequenceOutput();
@@ -59,56 +144,136 @@ public class AutoConfigProfile implements Serializable {
     ForceHeadsetPlug = profile.getForceHeadsetPlug();
     UseVoiceRecognition = profile.getUseVoiceRecognition();
     VolumeLevelAdjust = profile.getVolumeLevelAdjust();
+  }
 
-    try {
-        FileOutputStream fileOutputStream = ctx.openFileOutput(AUTO_CONFIG_FILENAME, Context.MODE_PRIVATE);
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
-        objectOutputStream.writeObject(this);
-        objectOutputStream.close();
-        fileOutputStream.close();
-    } catch (IOException e) {
-        e.printStackTrace();
-        return false;
+  public StructConfigParameters toProfile() {
+    StructConfigParameters profile = new StructConfigParameters();
+    profile.setDirectionOutputWave(DirectionOutputWave);
+    profile.setFrequenceInput(FrequencyInput);
+    profile.setFrequenceOutput(FrequencyOutput);
+    profile.setRecordBufferSize(RecordBufferSize);
+    profile.setRecordReadBufferSize(RecordReadBufferSize);
+    profile.setWaveDirection(WaveDirection);
+    profile.sethighThreshold(HighThreshold);
+    profile.setlowThreshold(LowThreshold);
+    profile.setMin(Min);
+    profile.setMax(Max);
+    profile.setBaudRate(BaudRate);
+    profile.setPreAmbleFactor(PreambleFactor);
+    profile.setShuttleChannel(ShuttleChannel);
+    profile.setForceHeadsetPlug(ForceHeadsetPlug);
+    profile.setUseVoiceRecognition(UseVoiceRecognition);
+    profile.setVolumeLevelAdjust(VolumeLevelAdjust);
+    return profile;
+  }
+
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_LENGTH);
+    buffer.putInt(RECORD_MAGIC);
+    buffer.putShort(RECORD_VERSION);
+    buffer.putShort((short) PAYLOAD_LENGTH);
+    putPayload(buffer);
+    buffer.putInt(crc(buffer.array(), 0, RECORD_LENGTH - 4));
+    return buffer.array();
+  }
+
+  // Parses a binary record. Returns null if it is damaged or of an unknown version.
+  public static AutoConfigProfile fromBytes(byte[] record) {
+    if (record == null || record.length != RECORD_LENGTH) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(record);
+    if (buffer.getInt() != RECORD_MAGIC
+        || buffer.getShort() != RECORD_VERSION
+        || buffer.getShort() != PAYLOAD_LENGTH
+        || buffer.getInt(RECORD_LENGTH - 4) != crc(record, 0, RECORD_LENGTH - 4)) {
+      return null;
     }
+    AutoConfigProfile autoConfig = new AutoConfigProfile();
+    autoConfig.getPayload(buffer);
+    return autoConfig;
+  }
 
-    return true;
+  private void putPayload(ByteBuffer buffer) {
+    buffer.putShort(DirectionOutputWave);
+    buffer.putInt(FrequencyInput);
+    buffer.putInt(FrequencyOutput);
+    buffer.putInt(RecordBufferSize);
+    buffer.putInt(RecordReadBufferSize);
+    buffer.putInt(WaveDirection);
+    buffer.putShort(HighThreshold);
+    buffer.putShort(LowThreshold);
+    buffer.putShort(Min);
+    buffer.putShort(Max);
+    buffer.putInt(BaudRate);
+    buffer.putShort(PreambleFactor);
+    buffer.put(ShuttleChannel);
+    buffer.putShort(ForceHeadsetPlug);
+    buffer.putShort(UseVoiceRecognition);
+    buffer.putShort(VolumeLevelAdjust);
+  }
+
+  private void getPayload(ByteBuffer buffer) {
+    DirectionOutputWave = buffer.getShort();
+    FrequencyInput = buffer.getInt();
+    FrequencyOutput = buffer.getInt();
+    RecordBufferSize = buffer.getInt();
+    RecordReadBufferSize = buffer.getInt();
+    WaveDirection = buffer.getInt();
+    HighThreshold = buffer.getShort();
+    LowThreshold = buffer.getShort();
+    Min = buffer.getShort();
+    Max = buffer.getShort();
+    BaudRate = buffer.getInt();
+    PreambleFactor = buffer.getShort();
+    ShuttleChannel = buffer.get();
+    ForceHeadsetPlug = buffer.getShort();
+    UseVoiceRecognition = buffer.getShort();
+    VolumeLevelAdjust = buffer.getShort();
   }
 
-  // Creates an object by reading it from a file
-  public StructConfigParameters loadAutoConfigProfile(ReactApplicationContext ctx) {
+  static int crc(byte[] data, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(data, offset, length);
+    return (int) crc.getValue();
+  }
+
+  // Writes to a temp file next to the target, syncs it, then renames it over the target
+  static void writeAtomically(File file, byte[] data) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    FileOutputStream out = new FileOutputStream(tmp);
     try {
-        FileInputStream fileInputStream = ctx.openFileInput(AUTO_CONFIG_FILENAME);
-        ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
-        AutoConfigProfile autoConfig = (AutoConfigProfile) objectInputStream.readObject();
-        objectInputStream.close();
-        fileInputStream.close();
-
-        StructConfigParameters profile = new StructConfigParameters();
-        profile.setDirectionOutputWave(autoConfig.DirectionOutputWave);
-        profile.setFrequenceInput(autoConfig.FrequencyInput);
-        profile.setFrequenceOutput(autoConfig.FrequencyOutput);
-        profile.setRecordBufferSize(autoConfig.RecordBufferSize);
-        profile.setRecordReadBufferSize(autoConfig.RecordReadBufferSize);
-        profile.setWaveDirection(autoConfig.WaveDirection);
-        profile.sethighThreshold(autoConfig.HighThreshold);
-        profile.setlowThreshold(autoConfig.LowThreshold);
-        profile.setMin(autoConfig.Min);
-        profile.setMax(autoConfig.Max);
-        profile.setBaudRate(autoConfig.BaudRate);
-        profile.setPreAmbleFactor(autoConfig.PreambleFactor);
-        profile.setShuttleChannel(autoConfig.ShuttleChannel);
-        profile.setForceHeadsetPlug(autoConfig.ForceHeadsetPlug);
-        profile.setUseVoiceRecognition(autoConfig.UseVoiceRecognition);
-        profile.setVolumeLevelAdjust(autoConfig.VolumeLevelAdjust);
-        return profile;
-    } catch (IOException e) {
-        e.printStackTrace();
+      out.write(data);
+      out.getFD().sync();
+    } finally {
+      out.close();
     }
-    catch (ClassNotFoundException e) {
-        e.printStackTrace();
+    if (!tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Failed to rename " + tmp + " to " + file);
     }
+  }
 
-    return null;
+  // Reads a file of exactly the expected length, or returns null if its length differs
+  static byte[] readFully(File file, int expectedLength) throws IOException {
+    if (file.length() != expectedLength) {
+      return null;
+    }
+    byte[] data = new byte[expectedLength];
+    FileInputStream in = new FileInputStream(file);
+    try {
+      int read = 0;
+      while (read < expectedLength) {
+        int n = in.read(data, read, expectedLength - read);
+        if (n < 0) {
+          return null;
+        }
+        read += n;
+      }
+    } finally {
+      in.close();
+    }
+    return data;
   }
 
   public WritableMap toWritableMap(StructConfigParameters profile) {
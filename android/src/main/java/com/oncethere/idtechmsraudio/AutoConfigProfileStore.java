@@ -0,0 +1,282 @@
+package com.oncethere.idtechmsraudio;
+
+import IDTech.MSR.XMLManager.StructConfigParameters;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Auto config profiles keyed by device model, audio route and reader type.
+ *
+ * Each profile lives in its own file under umAutoConfigProfiles/ and is cached in memory after
+ * the directory is read once, so repeated activate() calls never touch the disk. Entries older
+ * than maxAgeMs are evicted, as are the least recently used ones beyond maxEntries.
+ *
+ * File layout, big endian: magic, version, savedAt, key length, UTF-8 key,
+ * AutoConfigProfile record, CRC32 of everything before it.
+ */
+public class AutoConfigProfileStore {
+  static final String DIRECTORY = "umAutoConfigProfiles";
+  static final String FILE_SUFFIX = ".bin";
+  static final int ENTRY_MAGIC = 0x554D5053; //"UMPS"
+  static final short ENTRY_VERSION = 1;
+
+  public static final long DEFAULT_MAX_AGE_MS = 180L * 24 * 60 * 60 * 1000;
+  public static final int DEFAULT_MAX_ENTRIES = 32;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  public static class Entry {
+    public final String key;
+    public final long savedAt;
+    public final AutoConfigProfile profile;
+
+    Entry(String key, long savedAt, AutoConfigProfile profile) {
+      this.key = key;
+      this.savedAt = savedAt;
+      this.profile = profile;
+    }
+  }
+
+  private final Context context;
+  private final File directory;
+  private long maxAgeMs = DEFAULT_MAX_AGE_MS;
+  private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+  //access ordered, so iteration starts at the least recently used entry
+  private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private boolean loaded = false;
+
+  public AutoConfigProfileStore(Context context) {
+    this.context = context;
+    this.directory = new File(context.getFilesDir(), DIRECTORY);
+  }
+
+  public synchronized void setLimits(long maxAgeMs, int maxEntries) {
+    this.maxAgeMs = maxAgeMs;
+    this.maxEntries = Math.max(1, maxEntries);
+    if (loaded) {
+      evict();
+    }
+  }
+
+  // Key for the current device, audio route and reader type
+  public static String keyFor(Context context, UmReader readerType) {
+    return Build.MANUFACTURER + "/" + Build.MODEL + "|" + audioRoute(context) + "|" + readerType.name();
+  }
+
+  private static String audioRoute(Context context) {
+    AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    if (audioManager == null) {
+      return "unknown";
+    }
+    if (audioManager.isWiredHeadsetOn()) {
+      return "wired";
+    }
+    if (audioManager.isBluetoothA2dpOn()) {
+      return "bluetooth";
+    }
+    return "builtin";
+  }
+
+  public synchronized StructConfigParameters get(String key) {
+    load();
+    Entry entry = cache.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (isStale(entry, System.currentTimeMillis())) {
+      remove(key);
+      return null;
+    }
+    return entry.profile.toProfile();
+  }
+
+  public synchronized boolean put(String key, StructConfigParameters profile) {
+    load();
+    AutoConfigProfile autoConfig = new AutoConfigProfile();
+    autoConfig.setProfile(profile);
+    Entry entry = new Entry(key, System.currentTimeMillis(), autoConfig);
+    try {
+      if (!directory.exists() && !directory.mkdirs()) {
+        throw new IOException("Failed to create " + directory);
+      }
+      AutoConfigProfile.writeAtomically(fileFor(key), toBytes(entry));
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+    cache.put(key, entry);
+    evict();
+    return true;
+  }
+
+  public synchronized List<Entry> list() {
+    load();
+    evict();
+    return new ArrayList<>(cache.values());
+  }
+
+  public synchronized boolean invalidate(String key) {
+    load();
+    return remove(key);
+  }
+
+  public synchronized int invalidateAll() {
+    load();
+    int count = cache.size();
+    for (String key : new ArrayList<>(cache.keySet())) {
+      remove(key);
+    }
+    return count;
+  }
+
+  // Moves the single profile saved by older versions under key, once
+  public synchronized void migrateLegacyProfile(String key) {
+    load();
+    if (cache.containsKey(key)) {
+      return;
+    }
+    StructConfigParameters legacy = new AutoConfigProfile().loadAutoConfigProfile(context);
+    if (legacy != null && put(key, legacy)) {
+      AutoConfigProfile.deleteAutoConfigProfile(context);
+    }
+  }
+
+  private boolean remove(String key) {
+    Entry entry = cache.remove(key);
+    File file = fileFor(key);
+    return file.delete() || entry != null;
+  }
+
+  private boolean isStale(Entry entry, long now) {
+    return maxAgeMs > 0 && now - entry.savedAt > maxAgeMs;
+  }
+
+  private void evict() {
+    final long now = System.currentTimeMillis();
+    List<String> evicted = new ArrayList<>();
+    int remaining = cache.size();
+    for (Entry entry : cache.values()) {
+      if (isStale(entry, now) || remaining > maxEntries) {
+        evicted.add(entry.key);
+        remaining--;
+      }
+    }
+    for (String key : evicted) {
+      remove(key);
+    }
+  }
+
+  // Reads every profile file once
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<Entry> entries = new ArrayList<>();
+    for (File file : files) {
+      if (!file.getName().endsWith(FILE_SUFFIX)) {
+        //e.g. a temp file left by a crash
+        file.delete();
+        continue;
+      }
+      Entry entry = null;
+      try {
+        entry = fromBytes(readFile(file));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      if (entry == null || !file.equals(fileFor(entry.key))) {
+        file.delete();
+        continue;
+      }
+      entries.add(entry);
+    }
+    //oldest first, so the newest end up most recently used
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry a, Entry b) {
+        return a.savedAt < b.savedAt ? -1 : (a.savedAt == b.savedAt ? 0 : 1);
+      }
+    });
+    for (Entry entry : entries) {
+      cache.put(entry.key, entry);
+    }
+    evict();
+  }
+
+  private File fileFor(String key) {
+    //readable prefix plus a hash, since sanitizing alone could map two keys to one name
+    String safe = key.replaceAll("[^A-Za-z0-9._-]", "_");
+    if (safe.length() > 64) {
+      safe = safe.substring(0, 64);
+    }
+    return new File(directory, safe + "-" + Integer.toHexString(key.hashCode()) + FILE_SUFFIX);
+  }
+
+  static byte[] toBytes(Entry entry) {
+    byte[] key = entry.key.getBytes(UTF_8);
+    byte[] profile = entry.profile.toBytes();
+    ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + 8 + 2 + key.length + profile.length + 4);
+    buffer.putInt(ENTRY_MAGIC);
+    buffer.putShort(ENTRY_VERSION);
+    buffer.putLong(entry.savedAt);
+    buffer.putShort((short) key.length);
+    buffer.put(key);
+    buffer.put(profile);
+    buffer.putInt(AutoConfigProfile.crc(buffer.array(), 0, buffer.position()));
+    return buffer.array();
+  }
+
+  // Returns null if the data is damaged or of an unknown version
+  static Entry fromBytes(byte[] data) {
+    if (data == null || data.length < 4 + 2 + 8 + 2 + AutoConfigProfile.RECORD_LENGTH + 4) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    if (buffer.getInt() != ENTRY_MAGIC || buffer.getShort() != ENTRY_VERSION) {
+      return null;
+    }
+    if (buffer.getInt(data.length - 4) != AutoConfigProfile.crc(data, 0, data.length - 4)) {
+      return null;
+    }
+    long savedAt = buffer.getLong();
+    int keyLength = buffer.getShort() & 0xFFFF;
+    if (buffer.position() + keyLength + AutoConfigProfile.RECORD_LENGTH + 4 != data.length) {
+      return null;
+    }
+    String key = new String(data, buffer.position(), keyLength, UTF_8);
+    buffer.position(buffer.position() + keyLength);
+    byte[] record = new byte[AutoConfigProfile.RECORD_LENGTH];
+    buffer.get(record);
+    AutoConfigProfile profile = AutoConfigProfile.fromBytes(record);
+    if (profile == null) {
+      return null;
+    }
+    return new Entry(key, savedAt, profile);
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    long length = file.length();
+    if (length > 4096) {
+      return null;
+    }
+    return AutoConfigProfile.readFully(file, (int) length);
+  }
+}
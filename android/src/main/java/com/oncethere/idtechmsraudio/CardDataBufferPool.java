@@ -0,0 +1,92 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of buffers for card data, zero-filled whenever they are given back.
+ *
+ * Buffers are bufferSize bytes, heap or direct. Direct buffers keep track data off the Java heap,
+ * where the GC may copy it around before it is collected. Requests larger than bufferSize get a
+ * buffer of their own, which release() zero-fills but does not keep. Safe to use from any thread.
+ * The module's pool holds the swipes queued for export, see SwipeExporter.
+ */
+public class CardDataBufferPool {
+  public static final int DEFAULT_BUFFER_SIZE = 1024; //fits any swipe of the UniMag readers
+  public static final int DEFAULT_MAX_POOLED = 32; //a default export batch
+
+  private static final byte[] ZEROS = new byte[256];
+
+  private final int bufferSize;
+  private final boolean direct;
+  private final int maxPooled;
+  private final ArrayBlockingQueue<ByteBuffer> free;
+  private final AtomicLong allocated = new AtomicLong();
+
+  public CardDataBufferPool() {
+    this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED, false);
+  }
+
+  public CardDataBufferPool(int bufferSize, int maxPooled, boolean direct) {
+    this.bufferSize = Math.max(1, bufferSize);
+    this.direct = direct;
+    this.maxPooled = Math.max(1, maxPooled);
+    this.free = new ArrayBlockingQueue<>(this.maxPooled);
+  }
+
+  public boolean isDirect() {
+    return direct;
+  }
+
+  public int getMaxPooled() {
+    return maxPooled;
+  }
+
+  // Buffer with position 0 and limit length. The contents are all zero.
+  public ByteBuffer acquire(int length) {
+    ByteBuffer buffer = length <= bufferSize ? free.poll() : null;
+    if (buffer == null) {
+      allocated.incrementAndGet();
+      int capacity = Math.max(length, bufferSize);
+      buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+    buffer.clear();
+    buffer.limit(length);
+    return buffer;
+  }
+
+  // Zero-fills buffer and keeps it for reuse if there is room. buffer must not be used afterwards.
+  public void release(ByteBuffer buffer) {
+    if (buffer == null) {
+      return;
+    }
+    zero(buffer);
+    if (buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+      free.offer(buffer);
+    }
+  }
+
+  // Buffers allocated so far, pooled or not
+  public long getAllocated() {
+    return allocated.get();
+  }
+
+  public int getPooled() {
+    return free.size();
+  }
+
+  // Zero-fills the whole capacity, whatever position and limit were left at
+  static void zero(ByteBuffer buffer) {
+    buffer.clear();
+    if (buffer.hasArray()) {
+      Arrays.fill(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + buffer.capacity(), (byte) 0);
+    } else {
+      while (buffer.hasRemaining()) {
+        buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+      }
+    }
+    buffer.clear();
+  }
+}
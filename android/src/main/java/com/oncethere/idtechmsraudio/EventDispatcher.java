@@ -0,0 +1,180 @@
+package com.oncethere.idtechmsraudio;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sits between the uniMagReaderMsg callbacks and RCTDeviceEventEmitter.
+ *
+ * High-frequency events (autoconfig progress) are coalesced: only the latest one is kept and
+ * they are sent at most once per coalesce interval. Informational events can be batched into a
+ * single `event_batch` emission. Every other event, e.g. autoconfig_complete, swipe_received or
+ * failed, flushes whatever is pending and is then sent immediately, so order is always preserved.
+ */
+public class EventDispatcher {
+  public static final String BATCH_EVENT_TYPE = "event_batch";
+
+  // Only the latest event of these types matters
+  private static final Set<String> COALESCED_TYPES = new HashSet<>(Arrays.asList(
+    "autoconfig_progress"
+  ));
+  // Informational events that may wait for a batch
+  private static final Set<String> BATCHED_TYPES = new HashSet<>(Arrays.asList(
+    "initializing",
+    "swiping",
+    "swipe_processing",
+    "calibrate",
+    "umAutoConfigProfile",
+    "autoconfig_progress"
+  ));
+
+  private final ReactApplicationContext reactContext;
+  private final String eventName;
+  private final Handler handler;
+
+  private int coalesceIntervalMs = 0;
+  private int batchSize = 1;
+  private int batchWindowMs = 0;
+
+  private final ArrayList<WritableMap> pending = new ArrayList<>();
+  private int pendingCoalescedIndex = -1; //index of the coalesced event in pending, if any
+  private long lastCoalescedEmit = 0;
+  private boolean flushScheduled = false;
+
+  private final Runnable flushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (EventDispatcher.this) {
+        flushScheduled = false;
+        flush(false);
+      }
+    }
+  };
+
+  public EventDispatcher(ReactApplicationContext reactContext, String eventName) {
+    this(reactContext, eventName, new Handler(Looper.getMainLooper()));
+  }
+
+  public EventDispatcher(ReactApplicationContext reactContext, String eventName, Handler handler) {
+    this.reactContext = reactContext;
+    this.eventName = eventName;
+    this.handler = handler;
+  }
+
+  // coalesceIntervalMs: minimum time between two coalesced events, 0 to send all of them
+  // batchSize: maximum events per emission, 1 to disable batching
+  // batchWindowMs: longest time a batched event waits for others
+  public synchronized void configure(int coalesceIntervalMs, int batchSize, int batchWindowMs) {
+    this.coalesceIntervalMs = Math.max(0, coalesceIntervalMs);
+    this.batchSize = Math.max(1, batchSize);
+    this.batchWindowMs = Math.max(0, batchWindowMs);
+    flush(true);
+  }
+
+  public synchronized void dispatch(WritableMap event) {
+    final String type = event.hasKey("type") ? event.getString("type") : null;
+    final long now = SystemClock.uptimeMillis();
+
+    if (coalesceIntervalMs > 0 && COALESCED_TYPES.contains(type)) {
+      //replace the previous value, but keep it behind everything received before this one
+      if (pendingCoalescedIndex >= 0) {
+        pending.remove(pendingCoalescedIndex);
+      }
+      pendingCoalescedIndex = pending.size();
+      pending.add(event);
+
+      long due = lastCoalescedEmit + coalesceIntervalMs;
+      if (now >= due && batchSize == 1) {
+        flush(false);
+      } else {
+        scheduleFlush(Math.max(due - now, batchSize > 1 ? batchWindowMs : 0));
+      }
+      return;
+    }
+
+    if (batchSize > 1 && BATCHED_TYPES.contains(type)) {
+      pending.add(event);
+      if (pending.size() >= batchSize) {
+        flush(false);
+      } else {
+        scheduleFlush(batchWindowMs);
+      }
+      return;
+    }
+
+    //everything else goes out right away, after anything queued before it
+    flush(true);
+    emit(event);
+  }
+
+  // Sends everything pending. Unless forced, a coalesced event that is not due yet is held back.
+  // Must hold the lock.
+  private void flush(boolean force) {
+    if (flushScheduled) {
+      handler.removeCallbacks(flushRunnable);
+      flushScheduled = false;
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    WritableMap held = null;
+    if (pendingCoalescedIndex >= 0) {
+      final long now = SystemClock.uptimeMillis();
+      if (!force && now < lastCoalescedEmit + coalesceIntervalMs) {
+        held = pending.remove(pendingCoalescedIndex);
+      } else {
+        lastCoalescedEmit = now;
+      }
+      pendingCoalescedIndex = -1;
+    }
+
+    if (pending.size() == 1 || batchSize == 1) {
+      for (WritableMap event : pending) {
+        emit(event);
+      }
+    } else {
+      WritableArray events = Arguments.createArray();
+      for (WritableMap event : pending) {
+        events.pushMap(event);
+      }
+      WritableMap batch = Arguments.createMap();
+      batch.putString("type", BATCH_EVENT_TYPE);
+      batch.putArray("events", events);
+      emit(batch);
+    }
+    pending.clear();
+
+    if (held != null) {
+      pendingCoalescedIndex = 0;
+      pending.add(held);
+      scheduleFlush(lastCoalescedEmit + coalesceIntervalMs - SystemClock.uptimeMillis());
+    }
+  }
+
+  private void scheduleFlush(long delayMs) {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    handler.postDelayed(flushRunnable, delayMs);
+  }
+
+  private void emit(WritableMap event) {
+    reactContext
+        .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+        .emit(eventName, event);
+  }
+}
@@ -0,0 +1,13 @@
+package com.oncethere.idtechmsraudio;
+
+// Destination for the fields of one bridge event.
+// Keeps event building free of React Native types so it can run on a plain JVM.
+public interface EventPayload {
+  void putString(String key, String value);
+  void putInt(String key, int value);
+  void putDouble(String key, double value);
+  void putBoolean(String key, boolean value);
+  void putNull(String key);
+  // values may contain nulls
+  void putStringArray(String key, String[] values);
+}
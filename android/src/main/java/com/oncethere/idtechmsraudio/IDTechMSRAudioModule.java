@@ -16,30 +16,88 @@ import IDTech.MSR.uniMag.UniMagTools.uniMagReaderToolsMsg;
 import IDTech.MSR.uniMag.UniMagTools.uniMagSDKTools;
 import IDTech.MSR.uniMag.uniMagReader.ReaderType;
 
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Base64;
+
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
-import javax.annotation.Nullable;
 
 public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements uniMagReaderMsg {
 
-  private uniMagReader _uniMagReader = null;
+  private final ReaderSession session;
+  private final ReaderState state = new ReaderState();
   private ReactApplicationContext _reactContext = null;
   private AutoConfigProfile autoConfigProfile = new AutoConfigProfile();
+  private final ReaderOptions options = new ReaderOptions();
+  private final SwipePipeline swipePipeline = new SwipePipeline("IDTechMSRAudioSwipe");
+  private final SwipeStage emitStage = new SwipeStage() {
+    @Override
+    public boolean process(SwipeContext swipe) {
+      emitCardData(swipe);
+      return true;
+    }
+  };
+  private final EventDispatcher eventDispatcher;
+  private final ReaderMetrics metrics = new ReaderMetrics();
+  private final SwipeStages.JournalStage journalStage = new SwipeStages.JournalStage(metrics);
+  private final ReaderTracer tracer = new ReaderTracer();
+  private final AutoConfigProfileStore profileStore;
+  private final HandlerThread readerThread; //every SDK call and callback runs here
+  private final Handler readerHandler;
+  private final SwipeRearmer rearmer; //continuous swipe mode
+  private String profileKey = null; //profile store key of the active reader
+  // Wire encodings of swipe data and command results, fixed at activate()
+  private volatile String swipeEncoding = PayloadEncoder.HEX;
+  private volatile String commandEncoding = PayloadEncoder.LATIN1;
+  private final ProfileCatalog catalog;
+  private final ArrayList<StructConfigParameters> catalogCandidates = new ArrayList<>(); //left to try
+  private StructConfigParameters catalogTrial = null; //catalog profile being connected with
+  private CardDataBufferPool cardDataPool = null; //see getCardDataPool()
+  private SwipeJournal journal = null; //opened at the first activate() with the journal option
+  private volatile SwipeExporter exporter = null; //set up from the export options
+  private String exportConfig = ""; //export options exporter was set up with
   public static final String CALLBACK_EVENT_NAME = "IdTechUniMagEvent";
+  static final String JOURNAL_FILENAME = "umSwipeJournal.bin";
 
 
   public IDTechMSRAudioModule(ReactApplicationContext reactContext) {
     super(reactContext);
     _reactContext = reactContext;
+    readerThread = new HandlerThread("IDTechMSRAudioReader");
+    readerThread.start();
+    readerHandler = new Handler(readerThread.getLooper());
+    rearmer = new SwipeRearmer(readerHandler, new SwipeRearmer.Target() {
+      @Override
+      public boolean rearm() {
+        return rearmSwipe();
+      }
+    });
+    eventDispatcher = new EventDispatcher(reactContext, CALLBACK_EVENT_NAME, readerHandler);
+    eventDispatcher.configure(options.coalesceIntervalMs, options.batchSize, options.batchWindowMs);
+    profileStore = new AutoConfigProfileStore(reactContext);
+    catalog = new ProfileCatalog(reactContext);
+
+    swipePipeline.addStage(SwipeStages.VALIDATE);
+    swipePipeline.addStage(SwipeStages.PARSE);
+    swipePipeline.addStage(new SwipeStages.DedupeStage(options, metrics));
+    swipePipeline.addStage(journalStage);
+    swipePipeline.addStage(new SwipeStages.MaskStage(options));
+    swipePipeline.addStage(emitStage);
+    swipePipeline.start();
+    session = new ReaderSession(new ReaderCallbacks(this, readerHandler, tracer), reactContext, readerHandler);
   }
 
   @Override
@@ -47,19 +105,56 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     return "IDTECH_MSR_audio";
   }
 
+  @Override
+  public void onCatalystInstanceDestroy() {
+    state.set(ReaderState.State.RELEASED);
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        rearmer.stop();
+        session.release();
+        if (journal != null) {
+          journal.sync();
+        }
+        if (exporter != null) {
+          exporter.stop();
+        }
+        readerThread.quit();
+        swipePipeline.stop();
+      }
+    });
+  }
+
   @ReactMethod
-  public void activate(Integer readerType, Integer swipeTimeout, Boolean logging, Promise promise) {
+  public void activate(final Integer readerType, final Integer swipeTimeout, final Boolean logging, final Promise promise) {
+    UmRet ret = state.beginActivate();
+    if (ret != UmRet.UMRET_SUCCESS) {
+      resolveRejected(ret, promise);
+      return;
+    }
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("activate");
+        try {
+          activateOnReaderThread(readerType, swipeTimeout, logging, promise);
+        } finally {
+          tracer.end("activate");
+        }
+      }
+    });
+  }
+
+  private void activateOnReaderThread(Integer readerType, Integer swipeTimeout, Boolean logging, Promise promise) {
     Integer statusCode = UmRet.UMRET_SUCCESS.getValue();
     String message = "";
 
-    if (_uniMagReader!=null) {
-			_uniMagReader.unregisterListen();
-			_uniMagReader.release();
-			_uniMagReader = null;
-		}
-
     ReaderType _readerType;
     UmReader umReaderType = UmReader.valueOf(readerType);
+    //unknown types fall back to a shuttle, as below
+    if (umReaderType == null) {
+      umReaderType = UmReader.UMREADER_SHUTTLE;
+    }
     switch (umReaderType)	{
       case UMREADER_UNIMAG_ORIGINAL:
         _readerType = ReaderType.UM;
@@ -76,23 +171,44 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
         break;
     }
 
-		_uniMagReader = new uniMagReader(this, _reactContext, _readerType);
+    swipeEncoding = options.swipeEncoding;
+    commandEncoding = options.commandEncoding;
+
+    journalStage.setJournal(options.journal ? openJournal() : null);
+    if (options.journal) {
+      replayJournal();
+    }
+
+    profileKey = AutoConfigProfileStore.keyFor(_reactContext, umReaderType);
+    profileStore.migrateLegacyProfile(profileKey);
+    StructConfigParameters acProfile = profileStore.get(profileKey);
+
+    catalogCandidates.clear();
+    catalogTrial = null;
+
+    boolean warm = session.isWarm(_readerType, profileKey, acProfile);
+    uniMagReader _uniMagReader = session.acquire(_readerType, profileKey, acProfile);
 
 		if (_uniMagReader != null) {
-      _uniMagReader.registerListen();
       _uniMagReader.setTimeoutOfSwipeCard(swipeTimeout == 0 ? Integer.MAX_VALUE : swipeTimeout);
       _uniMagReader.setVerboseLoggingEnable(logging);
 
-      StructConfigParameters acProfile = autoConfigProfile.loadAutoConfigProfile(_reactContext);
-
-      if (acProfile != null) {
-        sendEvent(CALLBACK_EVENT_NAME, autoConfigProfile.toWritableMap(acProfile));
-        _uniMagReader.connectWithProfile(acProfile);
+      if (warm) {
+        //still connected with the same profile, skip the handshake
+        message = "Reader already connected.";
+        metrics.increment(ReaderMetrics.WARM_ACTIVATIONS);
+        onReceiveMsgConnected();
+      }
+      else if (acProfile != null) {
+        sendEvent(autoConfigProfile.toWritableMap(acProfile));
+        session.connectWithProfile(acProfile);
         message = "Found existing auto config profile.";
       }
       else {
-        message = "Starting auto config.";
-        _uniMagReader.startAutoConfig(true);
+        //profiles that worked on the same handset model before are much quicker to try than a sweep
+        catalogCandidates.addAll(catalog.candidates(ProfileCatalog.deviceModel(), options.catalogCandidates));
+        message = catalogCandidates.isEmpty() ? "Starting auto config." : "Trying known profiles for this device.";
+        connectWithNextCandidate();
 
         // ID Tech's device profile table is too limited for production use.
         // _uniMagReader.setXMLFileNameWithPath("/sdcard/IDT_uniMagCfg.xml");
@@ -103,6 +219,7 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
       }
     }
     else {
+      state.transition(ReaderState.CONNECTING, ReaderState.State.IDLE);
       statusCode = UmRet.UMRET_NO_READER.getValue();
       message = "Failed to initialize UniMag";
     }
@@ -114,12 +231,25 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
   }
 
   @ReactMethod
-  public void deactivate(Promise promise) {
-    if (_uniMagReader != null) {
-      _uniMagReader.stopSwipeCard();
-      _uniMagReader.unregisterListen();
-      _uniMagReader.release();
-		}
+  public void configure(final ReadableMap options, final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("configure");
+        try {
+          configureOnReaderThread(options, promise);
+        } finally {
+          tracer.end("configure");
+        }
+      }
+    });
+  }
+
+  private void configureOnReaderThread(ReadableMap options, Promise promise) {
+    this.options.apply(options);
+    eventDispatcher.configure(this.options.coalesceIntervalMs, this.options.batchSize, this.options.batchWindowMs);
+    profileStore.setLimits(this.options.profileMaxAgeDays * 24L * 60 * 60 * 1000, this.options.maxProfiles);
+    configureExport();
 
     WritableMap result = Arguments.createMap();
     result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
@@ -127,20 +257,204 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     promise.resolve(result);
   }
 
+  // Saved auto config profiles, without their parameters
   @ReactMethod
-  public void swipe(Promise promise) {
-    Integer statusCode = UmRet.UMRET_SUCCESS.getValue();
-    String message = "Starting swipe...";
+  public void listProfiles(final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("listProfiles");
+        try {
+          listProfilesOnReaderThread(promise);
+        } finally {
+          tracer.end("listProfiles");
+        }
+      }
+    });
+  }
 
-    if (_uniMagReader != null) {
-      if (_uniMagReader.startSwipeCard()) {
+  private void listProfilesOnReaderThread(Promise promise) {
+    WritableArray profiles = Arguments.createArray();
+    for (AutoConfigProfileStore.Entry entry : profileStore.list()) {
+      WritableMap profile = Arguments.createMap();
+      profile.putString("key", entry.key);
+      profile.putDouble("savedAt", entry.savedAt);
+      profiles.pushMap(profile);
+    }
+    promise.resolve(profiles);
+  }
+
+  // Saved auto config profiles with their parameters
+  @ReactMethod
+  public void exportProfiles(final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("exportProfiles");
+        try {
+          exportProfilesOnReaderThread(promise);
+        } finally {
+          tracer.end("exportProfiles");
+        }
+      }
+    });
+  }
+
+  private void exportProfilesOnReaderThread(Promise promise) {
+    WritableArray profiles = Arguments.createArray();
+    for (AutoConfigProfileStore.Entry entry : profileStore.list()) {
+      WritableMap profile = autoConfigProfile.toWritableMap(entry.profile.toProfile());
+      profile.putString("key", entry.key);
+      profile.putDouble("savedAt", entry.savedAt);
+      profiles.pushMap(profile);
+    }
+    promise.resolve(profiles);
+  }
+
+  // Removes the saved profile with the given key, or all of them if key is null
+  @ReactMethod
+  public void invalidateProfile(final String key, final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("invalidateProfile");
+        try {
+          invalidateProfileOnReaderThread(key, promise);
+        } finally {
+          tracer.end("invalidateProfile");
+        }
+      }
+    });
+  }
+
+  private void invalidateProfileOnReaderThread(String key, Promise promise) {
+    int count;
+    if (key == null) {
+      count = profileStore.invalidateAll();
+    } else {
+      count = profileStore.invalidate(key) ? 1 : 0;
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
+    result.putString("message", "");
+    result.putInt("count", count);
+    promise.resolve(result);
+  }
+
+  @ReactMethod
+  public void deactivate(final Promise promise) {
+    //always allowed, and takes effect for calls made after it right away
+    state.set(ReaderState.State.RELEASED);
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("deactivate");
+        try {
+          deactivateOnReaderThread(promise);
+        } finally {
+          tracer.end("deactivate");
+        }
+      }
+    });
+  }
+
+  private void deactivateOnReaderThread(Promise promise) {
+    rearmer.stop();
+    catalogCandidates.clear();
+    catalogTrial = null;
+    if (options.keepWarm) {
+      session.suspend(options.idleTimeoutMs);
+      //unless activate() was called again meanwhile
+      state.transition(ReaderState.RELEASED, ReaderState.State.IDLE);
+    } else {
+      session.release();
+    }
+    if (journal != null) {
+      journal.sync();
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
+    result.putString("message", "");
+    promise.resolve(result);
+  }
 
+  // Stops swiping but keeps the reader connected for the next activate(), until the idle timeout
+  @ReactMethod
+  public void suspend(final Promise promise) {
+    UmRet ret = state.beginSuspend();
+    if (ret != UmRet.UMRET_SUCCESS) {
+      resolveRejected(ret, promise);
+      return;
+    }
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("suspend");
+        try {
+          suspendOnReaderThread(promise);
+        } finally {
+          tracer.end("suspend");
+        }
       }
+    });
+  }
+
+  private void suspendOnReaderThread(Promise promise) {
+    Integer statusCode = UmRet.UMRET_SUCCESS.getValue();
+    String message = "";
+
+    rearmer.stop();
+    if (session.getReader() != null) {
+      session.suspend(options.idleTimeoutMs);
     }
     else {
+      statusCode = UmRet.UMRET_NO_READER.getValue();
+      message = "No reader to suspend.";
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", statusCode);
+    result.putString("message", message);
+    promise.resolve(result);
+  }
+
+  @ReactMethod
+  public void swipe(final Promise promise) {
+    UmRet ret = state.beginSwipe();
+    if (ret != UmRet.UMRET_SUCCESS) {
+      resolveRejected(ret, promise);
+      return;
+    }
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("swipe");
+        try {
+          swipeOnReaderThread(promise);
+        } finally {
+          tracer.end("swipe");
+        }
+      }
+    });
+  }
+
+  private void swipeOnReaderThread(Promise promise) {
+    Integer statusCode = UmRet.UMRET_SUCCESS.getValue();
+    String message = "Starting swipe...";
+
+    uniMagReader _uniMagReader = session.getReader();
+    if (_uniMagReader == null) {
+      state.transition(ReaderState.SWIPING, ReaderState.State.IDLE);
       statusCode = UmRet.UMRET_NO_READER.getValue();
       message = "Unable to start swipe.";
     }
+    else if (!_uniMagReader.startSwipeCard()) {
+      state.transition(ReaderState.SWIPING, ReaderState.State.CONNECTED);
+      statusCode = UmRet.UMRET_SDK_BUSY.getValue();
+      message = "Unable to start swipe.";
+    }
 
     WritableMap result = Arguments.createMap();
     result.putInt("statusCode", statusCode);
@@ -148,53 +462,462 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     promise.resolve(result);
   }
 
+  // Keeps swiping until stopContinuousSwipe(), deactivate() or suspend(): the module starts the
+  // next swipe itself after card data, a timeout or a failure. Resumes when the reader reconnects.
+  @ReactMethod
+  public void startContinuousSwipe(final Promise promise) {
+    if ((state.get().bit() & ReaderState.INACTIVE) != 0) {
+      resolveRejected(UmRet.UMRET_NOT_CONNECTED, promise);
+      return;
+    }
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("startContinuousSwipe");
+        try {
+          startContinuousSwipeOnReaderThread(promise);
+        } finally {
+          tracer.end("startContinuousSwipe");
+        }
+      }
+    });
+  }
+
+  private void startContinuousSwipeOnReaderThread(Promise promise) {
+    rearmer.start(options.rearmIntervalMs, options.rearmBackoffMs, options.rearmMaxBackoffMs);
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
+    result.putString("message", "Starting continuous swipe...");
+    promise.resolve(result);
+  }
+
+  // Stops continuous swipe mode and the swipe waiting for a card, if any
+  @ReactMethod
+  public void stopContinuousSwipe(final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("stopContinuousSwipe");
+        try {
+          stopContinuousSwipeOnReaderThread(promise);
+        } finally {
+          tracer.end("stopContinuousSwipe");
+        }
+      }
+    });
+  }
+
+  private void stopContinuousSwipeOnReaderThread(Promise promise) {
+    rearmer.stop();
+    uniMagReader _uniMagReader = session.getReader();
+    //a card being read is left to finish
+    if (_uniMagReader != null && state.transition(ReaderState.SWIPING, ReaderState.State.CONNECTED)) {
+      _uniMagReader.stopSwipeCard();
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
+    result.putString("message", "");
+    promise.resolve(result);
+  }
+
+  // Marks a journaled swipe (the seq of its swipe_received event) as delivered, so it is not
+  // replayed again and its space can be reused
+  @ReactMethod
+  public void acknowledgeSwipe(final Double seq, final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("acknowledgeSwipe");
+        try {
+          acknowledgeSwipeOnReaderThread(seq, promise);
+        } finally {
+          tracer.end("acknowledgeSwipe");
+        }
+      }
+    });
+  }
+
+  private void acknowledgeSwipeOnReaderThread(Double seq, Promise promise) {
+    Integer statusCode = UmRet.UMRET_SUCCESS.getValue();
+    String message = "";
+    if (journal == null) {
+      statusCode = UmRet.UMRET_NOT_APPLICABLE.getValue();
+      message = "Swipe journal is not enabled.";
+    } else if (seq == null || !journal.acknowledge(seq.longValue())) {
+      statusCode = UmRet.UMRET_INVALID_ARG.getValue();
+      message = "No unacknowledged swipe with this seq.";
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", statusCode);
+    result.putString("message", message);
+    result.putInt("pending", journal == null ? 0 : journal.getPending());
+    promise.resolve(result);
+  }
+
+  // Latency percentiles and counts of the reader lifecycle. Only reads atomics, so it stays on the calling thread.
+  @ReactMethod
+  public void getMetrics(Boolean reset, Promise promise) {
+    WritableMap result = metrics.snapshot(reset != null && reset);
+    SwipeExporter exporter = this.exporter;
+    if (exporter != null) {
+      WritableMap export = Arguments.createMap();
+      export.putInt("queued", exporter.getQueued());
+      export.putDouble("exported", exporter.getExported());
+      export.putDouble("dropped", exporter.getDropped());
+      export.putDouble("failed", exporter.getFailed());
+      result.putMap("export", export);
+    }
+    promise.resolve(result);
+  }
+
+  // Current reader state, e.g. to decide whether a call would be rejected. Lock-free like getMetrics.
+  @ReactMethod
+  public void getState(Promise promise) {
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
+    result.putString("message", "");
+    result.putString("state", state.get().label());
+    promise.resolve(result);
+  }
+
+  // Starts or stops recording a timeline of React methods and reader callbacks. Stopping drops it.
+  @ReactMethod
+  public void setTracing(final Boolean enabled, final Integer capacity, final Promise promise) {
+    if (enabled != null && enabled) {
+      tracer.enable(capacity == null || capacity <= 0 ? ReaderTracer.DEFAULT_CAPACITY : capacity);
+    } else {
+      tracer.disable();
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
+    result.putString("message", "");
+    promise.resolve(result);
+  }
+
+  // Writes the recorded timeline as Chrome Trace Event JSON to app storage
+  @ReactMethod
+  public void dumpTrace(final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        dumpTraceOnReaderThread(promise);
+      }
+    });
+  }
+
+  private void dumpTraceOnReaderThread(Promise promise) {
+    Integer statusCode = UmRet.UMRET_SUCCESS.getValue();
+    String message = "";
+    File file = new File(_reactContext.getFilesDir(), "idtech-trace-" + System.currentTimeMillis() + ".json");
+    int count = 0;
+
+    if (!tracer.isEnabled()) {
+      statusCode = UmRet.UMRET_NOT_APPLICABLE.getValue();
+      message = "Tracing is not enabled.";
+    }
+    else {
+      try {
+        count = tracer.dump(file);
+      } catch (IOException e) {
+        e.printStackTrace();
+        statusCode = UmRet.UMRET_UF_NO_FILE.getValue();
+        message = "Failed to write trace: " + e.getMessage();
+      }
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", statusCode);
+    result.putString("message", message);
+    if (statusCode == UmRet.UMRET_SUCCESS.getValue()) {
+      result.putString("path", file.getAbsolutePath());
+    }
+    result.putInt("count", count);
+    promise.resolve(result);
+  }
+
+  // Compact base64 bundle of the profile catalog, for importProfileCatalog() on other devices
+  @ReactMethod
+  public void exportProfileCatalog(final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("exportProfileCatalog");
+        try {
+          exportProfileCatalogOnReaderThread(promise);
+        } finally {
+          tracer.end("exportProfileCatalog");
+        }
+      }
+    });
+  }
+
+  private void exportProfileCatalogOnReaderThread(Promise promise) {
+    byte[] bundle = catalog.exportBundle();
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", UmRet.UMRET_SUCCESS.getValue());
+    result.putString("message", "");
+    result.putString("bundle", Base64.encodeToString(bundle, Base64.NO_WRAP));
+    result.putInt("count", catalog.list().size());
+    promise.resolve(result);
+  }
+
+  // Merges a bundle from exportProfileCatalog() into the catalog
+  @ReactMethod
+  public void importProfileCatalog(final String bundle, final Promise promise) {
+    readerHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("importProfileCatalog");
+        try {
+          importProfileCatalogOnReaderThread(bundle, promise);
+        } finally {
+          tracer.end("importProfileCatalog");
+        }
+      }
+    });
+  }
+
+  private void importProfileCatalogOnReaderThread(String bundle, Promise promise) {
+    Integer statusCode = UmRet.UMRET_SUCCESS.getValue();
+    String message = "";
+    int count = -1;
+
+    try {
+      count = catalog.importBundle(bundle == null ? null : Base64.decode(bundle, Base64.DEFAULT));
+    } catch (IllegalArgumentException e) {
+      //not base64
+    }
+    if (count < 0) {
+      statusCode = UmRet.UMRET_UF_INVALID_FILE.getValue();
+      message = "Invalid profile catalog bundle.";
+      count = 0;
+    }
+
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", statusCode);
+    result.putString("message", message);
+    result.putInt("count", count);
+    promise.resolve(result);
+  }
 
   // ---------------------------------------------------------------------------
   // Helper methods
-  private void sendEvent(String eventName,
-                         @Nullable WritableMap params) {
-    _reactContext
-        .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-        .emit(eventName, params);
+
+  // Last stage of the swipe pipeline, runs on its worker
+  private void emitCardData(SwipeContext swipe) {
+    WritableMapPayload result = new WritableMapPayload();
+    writeSwipe(swipe.view, swipe.parsed, swipe.frame, swipe.length, result);
+    if (swipe.duplicate) {
+      result.putBoolean("duplicate", true);
+    }
+    if (swipe.seq >= 0) {
+      result.putDouble("seq", swipe.seq);
+    }
+    sendEvent(result.getMap());
   }
 
-  private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
-  public static String bytesToHex(byte[] bytes) {
-      if (bytes == null) return "";
+  private void writeSwipe(UmCardDataView view, boolean parsed, byte[] frame, int length, EventPayload result) {
+    if (options.structuredSwipe && parsed) {
+      SwipeEvents.writeParsedCardData(view, options.includeRawData, swipeEncoding, result);
+    } else {
+      SwipeEvents.writeCardData(frame, 0, length, swipeEncoding, result);
+    }
+  }
 
-      char[] hexChars = new char[bytes.length * 2];
-      for (int j = 0; j < bytes.length; j++) {
-          int v = bytes[j] & 0xFF;
-          hexChars[j * 2] = HEX_ARRAY[v >>> 4];
-          hexChars[j * 2 + 1] = HEX_ARRAY[v & 0x0F];
+  // Replaces the exporter if the export options changed. The old one delivers the swipes it still
+  // holds on its own worker, without holding up the reader thread.
+  private void configureExport() {
+    String config = options.exportFile + "|" + options.exportSocket + "|" + options.exportBatchSize
+      + "|" + options.exportBatchAgeMs + "|" + options.exportQueueSize + "|" + options.exportOverflow
+      + "|" + options.maskClearTracks + "|" + options.directBuffers + "|" + options.bufferPoolSize;
+    if (config.equals(exportConfig)) {
+      return;
+    }
+    exportConfig = config;
+    if (exporter != null) {
+      swipePipeline.removeStage(exporter);
+      exporter.stop();
+      exporter = null;
+    }
+
+    SwipeSink sink;
+    if (options.exportFile != null) {
+      sink = new SwipeSinks.FileSink(new File(_reactContext.getFilesDir(), options.exportFile), false);
+    } else if (options.exportSocket != null) {
+      sink = new SwipeSinks.LocalSocketSink(options.exportSocket);
+    } else {
+      return;
+    }
+    exporter = new SwipeExporter("IDTechMSRAudioExport", sink, Math.max(1, options.exportQueueSize), getCardDataPool())
+      .setBatching(Math.max(1, options.exportBatchSize), options.exportBatchAgeMs)
+      .setOverflow(options.exportOverflow, SwipeExporter.DEFAULT_BLOCK_TIMEOUT_MS)
+      //masked clear tracks may leave the module, as they do in events
+      .setEncryptedOnly(!options.maskClearTracks)
+      .start();
+    addSwipeStage(exporter);
+  }
+
+  // Opens the swipe journal on first use. Returns null if it cannot be opened.
+  private SwipeJournal openJournal() {
+    if (journal == null) {
+      try {
+        journal = new SwipeJournal(new File(_reactContext.getFilesDir(), JOURNAL_FILENAME));
+      } catch (IOException e) {
+        e.printStackTrace();
       }
-      return new String(hexChars);
+    }
+    return journal;
+  }
+
+  // Sends the journaled swipes not acknowledged yet as swipe_received events with replayed set
+  private void replayJournal() {
+    if (journal == null) {
+      return;
+    }
+    final UmCardDataView view = new UmCardDataView();
+    journal.replay(new SwipeJournal.Visitor() {
+      @Override
+      public void visit(long seq, byte flag, byte[] frame, int length) {
+        WritableMapPayload result = new WritableMapPayload();
+        view.parse(frame, 0, length);
+        writeSwipe(view, true, frame, length, result);
+        result.putBoolean("replayed", true);
+        result.putDouble("seq", seq);
+        sendEvent(result.getMap());
+      }
+    });
+    view.parse(null);
+  }
+
+  // Registers an extra swipe processing stage, before the one that emits swipe_received
+  public void addSwipeStage(SwipeStage stage) {
+    swipePipeline.addStageBefore(emitStage, stage);
+  }
+
+  // Pool for card data kept past a swipe stage: swipes queued for export, and stages holding
+  // PooledUmCardData. Replaced when the directBuffers or bufferPoolSize options change; holders
+  // of the old one keep releasing into it.
+  public synchronized CardDataBufferPool getCardDataPool() {
+    if (cardDataPool == null || cardDataPool.isDirect() != options.directBuffers
+        || cardDataPool.getMaxPooled() != Math.max(1, options.bufferPoolSize)) {
+      cardDataPool = new CardDataBufferPool(CardDataBufferPool.DEFAULT_BUFFER_SIZE, options.bufferPoolSize, options.directBuffers);
+    }
+    return cardDataPool;
+  }
+
+  // Connects with the next catalog candidate, or runs the full auto config sweep once none are left
+  private void connectWithNextCandidate() {
+    uniMagReader _uniMagReader = session.getReader();
+    if (_uniMagReader == null) {
+      return;
+    }
+    if (!catalogCandidates.isEmpty()) {
+      catalogTrial = catalogCandidates.remove(0);
+      sendEvent(autoConfigProfile.toWritableMap(catalogTrial));
+      session.connectWithProfile(catalogTrial);
+      return;
+    }
+    catalogTrial = null;
+    state.transition(ReaderState.CONNECTING, ReaderState.State.AUTOCONFIGURING);
+    metrics.onAutoConfigStarted();
+    _uniMagReader.startAutoConfig(true);
+  }
+
+  // Starts the next swipe of continuous swipe mode. Only a swipe the SDK refused counts as failed;
+  // while the reader is not connected there is nothing to do until onReceiveMsgConnected().
+  private boolean rearmSwipe() {
+    if (state.beginSwipe() != UmRet.UMRET_SUCCESS) {
+      return true;
+    }
+    uniMagReader _uniMagReader = session.getReader();
+    if (_uniMagReader == null) {
+      state.transition(ReaderState.SWIPING, ReaderState.State.IDLE);
+      return true;
+    }
+    if (!_uniMagReader.startSwipeCard()) {
+      state.transition(ReaderState.SWIPING, ReaderState.State.CONNECTED);
+      return false;
+    }
+    metrics.increment(ReaderMetrics.REARMS);
+    return true;
+  }
+
+  // Resolves a call the reader state did not allow, without touching the reader thread
+  private void resolveRejected(UmRet ret, Promise promise) {
+    String message;
+    switch (ret) {
+      case UMRET_SDK_BUSY:
+        message = "Reader is busy with another task.";
+        break;
+      case UMRET_ALREADY_CONNECTED:
+        message = "Reader already activated.";
+        break;
+      case UMRET_NOT_CONNECTED:
+        message = "Reader is not connected.";
+        break;
+      default:
+        message = "No reader.";
+        break;
+    }
+    WritableMap result = Arguments.createMap();
+    result.putInt("statusCode", ret.getValue());
+    result.putString("message", message);
+    result.putString("state", state.get().label());
+    promise.resolve(result);
+  }
+
+  private void sendEvent(WritableMap params) {
+    eventDispatcher.dispatch(params);
+  }
+
+  public static String bytesToHex(byte[] bytes) {
+      return PayloadEncoder.bytesToHex(bytes);
   }
 
   // ---------------------------------------------------------------------------
   // Required callbacks for uniMagReaderMsg
   public void onReceiveMsgToConnect() {
+    metrics.onConnecting();
     WritableMap result = Arguments.createMap();
     result.putString("originalType", "umConnection_starting");
     result.putString("type", "initializing");
     result.putString("message", "Starting connection with reader.");
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgConnected() {
+    if (catalogTrial != null) {
+      catalog.recordSuccess(ProfileCatalog.deviceModel(), catalogTrial);
+      profileStore.put(profileKey, catalogTrial);
+      catalogCandidates.clear();
+      catalogTrial = null;
+    }
+    state.transition(ReaderState.STARTING, ReaderState.State.CONNECTED);
+    rearmer.onConnected();
+    metrics.onConnected();
     WritableMap result = Arguments.createMap();
     result.putString("originalType", "umConnection_connected");
     result.putString("type", "connected");
     result.putString("message", "Reader successfully connected.");
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgDisconnected() {
+    //also mid-connect, so a catalog trial does not outlive the connection it was for
+    catalogCandidates.clear();
+    catalogTrial = null;
+    state.transition(ReaderState.STARTING | ReaderState.ACTIVE, ReaderState.State.IDLE);
+    metrics.onDisconnected();
     WritableMap result = Arguments.createMap();
     result.putString("originalType", "umConnection_disconnected");
     result.putString("type", "disconnected");
     result.putString("message", "Reader has been disconnected.");
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgTimeout(String strTimeoutMsg) {
@@ -202,49 +925,73 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     if ("Swipe card".equals(strTimeoutMsg)) {
       result.putString("originalType", "umSwipe_timeout");
       result.putString("type", "swipe_timeout");
+      metrics.onTimeout(ReaderMetrics.SWIPE_TIMEOUTS);
+      state.transition(ReaderState.SWIPING | ReaderState.PROCESSING, ReaderState.State.CONNECTED);
+      rearmer.onTimeout();
       result.putString("message", "Swipe timed out, please try again");
     } else if ("Start Auto config failed".equals(strTimeoutMsg)) {
       result.putString("originalType", "umAutoconfig_timeout");
       result.putString("type", "autoconfig_timeout");
+      metrics.onTimeout(ReaderMetrics.AUTOCONFIG_TIMEOUTS);
+      state.transition(ReaderState.STARTING, ReaderState.State.IDLE);
       result.putString("message", "Autoconfiguration timeout");
     } else if ("Connect the reader with unsupported phone".equals(strTimeoutMsg)) {
       result.putString("originalType", "umDevice_unsupported");
       result.putString("type", "device_unsupported");
+      metrics.onTimeout(ReaderMetrics.DEVICE_UNSUPPORTED);
+      state.transition(ReaderState.STARTING, ReaderState.State.IDLE);
       result.putString("message", "Your device appears to be unsupported");
+    } else if (catalogTrial != null) {
+      //the catalog profile did not work here, move on without bothering the app
+      catalog.recordFailure(ProfileCatalog.deviceModel(), catalogTrial);
+      connectWithNextCandidate();
+      return;
     } else { // if ("Connect the reader".equals(strTimeoutMsg)) {
       result.putString("originalType", "umConnection_timeout");
       result.putString("type", "connection_timeout");
+      metrics.onTimeout(ReaderMetrics.CONNECTION_TIMEOUTS);
+      state.transition(ReaderState.STARTING, ReaderState.State.IDLE);
       result.putString("message", "Connecting with reader timed out. Please try again.");
     }
     if (strTimeoutMsg != null) {
       result.putString("originalMessage", strTimeoutMsg);
     }
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgToSwipeCard() {
+    state.transition(ReaderState.CONNECTED, ReaderState.State.SWIPING);
+    metrics.onSwiping();
     WritableMap result = Arguments.createMap();
     result.putString("originalType", "umSwipe_starting");
     result.putString("type", "swiping");
     result.putString("message", "Waiting for card swipe...");
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgCardData(byte flagOfCardData, byte[] cardData) {
-    WritableMap result = Arguments.createMap();
-    result.putString("originalType", "umSwipe_receivedSwipe");
-    result.putString("type", "swipe_received");
-    result.putString("message", "Successful card swipe");
-    result.putString("data", IDTechMSRAudioModule.bytesToHex(cardData));
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    state.transition(ReaderState.SWIPING | ReaderState.PROCESSING, ReaderState.State.CONNECTED);
+    rearmer.onCardData();
+    metrics.onCardData();
+    //parsing and encoding happen on the swipe pipeline, see emitCardData()
+    boolean queued = swipePipeline.offer(flagOfCardData, cardData);
+    if (!queued) {
+      WritableMap result = Arguments.createMap();
+      result.putString("originalType", "umSwipe_dropped");
+      result.putString("type", "swipe_dropped");
+      result.putString("message", "Swipe processing is backed up, card data was dropped.");
+      sendEvent(result);
+    }
   }
 
   public void onReceiveMsgProcessingCardData() {
+    state.transition(ReaderState.SWIPING, ReaderState.State.PROCESSING);
+    metrics.onProcessingCardData();
     WritableMap result = Arguments.createMap();
     result.putString("originalType", "umSwipe_processing_card_data");
     result.putString("type", "swipe_processing");
     result.putString("message", "");
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgToCalibrateReader() {
@@ -252,7 +999,7 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     result.putString("originalType", "umSwipe_calibrate_card_reader");
     result.putString("type", "calibrate");
     result.putString("message", "");
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgCommandResult(int commandID, byte[] cmdReturn) {
@@ -260,8 +1007,9 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     result.putString("originalType", "umCommand_result");
     result.putString("type", "command_result");
     result.putString("message", Integer.toString(commandID));
-    result.putString("result", new String(cmdReturn, java.nio.charset.StandardCharsets.ISO_8859_1));
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    result.putString("encoding", commandEncoding);
+    result.putString("result", PayloadEncoder.encode(commandEncoding, cmdReturn));
+    sendEvent(result);
   }
 
   @Deprecated
@@ -270,10 +1018,15 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     result.putString("originalType", "umSD_card_failed");
     result.putString("type", "sd_card_failed");
     result.putString("message", strMSRData);
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgFailureInfo(int index , String strMessage) {
+    metrics.onFailure(index);
+    //a failure during a swipe ends it
+    if (state.transition(ReaderState.SWIPING | ReaderState.PROCESSING, ReaderState.State.CONNECTED)) {
+      rearmer.onFailure();
+    }
     WritableMap result = Arguments.createMap();
     if (index == 8) {
       result.putString("originalType", "umConnection_lowVolume");
@@ -286,7 +1039,7 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
       result.putString("message", strMessage);
       result.putInt("index", index);
     }
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgAutoConfigProgress(int progressValue) {
@@ -294,7 +1047,7 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     result.putString("originalType", "umAutoconfig_progress");
     result.putString("type", "autoconfig_progress");
     result.putString("message", Integer.toString(progressValue));
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgAutoConfigProgress(int percent, double res, String profileName) {
@@ -304,25 +1057,28 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     result.putString("message", Integer.toString(percent));
     result.putDouble("result", res);
     result.putString("profileName", profileName);
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
   }
 
   public void onReceiveMsgAutoConfigCompleted(StructConfigParameters profile) {
-    if (!autoConfigProfile.saveAutoConfigProfile(profile, _reactContext)) {
+    state.transition(ReaderState.AUTOCONFIGURING, ReaderState.State.CONNECTING);
+    metrics.onAutoConfigCompleted();
+    catalog.recordSuccess(ProfileCatalog.deviceModel(), profile);
+    if (profileKey == null || !profileStore.put(profileKey, profile)) {
       WritableMap saveResult = Arguments.createMap();
       saveResult.putString("originalType", "umAutoconfig_save_failed");
       saveResult.putString("type", "autoconfig_save_failed");
       saveResult.putString("message", "Failed to save auto config profile.");
-      sendEvent(CALLBACK_EVENT_NAME, saveResult);
+      sendEvent(saveResult);
     }
 
-    sendEvent(CALLBACK_EVENT_NAME, autoConfigProfile.toWritableMap(profile));
+    sendEvent(autoConfigProfile.toWritableMap(profile));
     WritableMap result = Arguments.createMap();
     result.putString("originalType", "umAutoconfig_complete");
     result.putString("type", "autoconfig_complete");
     result.putString("message", "Completed autoconfig. Connecting to reader.");
-    sendEvent(CALLBACK_EVENT_NAME, result);
-    _uniMagReader.connectWithProfile(profile);
+    sendEvent(result);
+    session.connectWithProfile(profile);
   }
 
   public boolean getUserGrant(int type, String strMessage) {
@@ -341,7 +1097,7 @@ public class IDTechMSRAudioModule extends ReactContextBaseJavaModule implements
     result.putString("type", "user_permissions");
     result.putString("message", strMessage);
     result.putInt("result", type);
-    sendEvent(CALLBACK_EVENT_NAME, result);
+    sendEvent(result);
 
 		return getUserGranted;
   }
@@ -0,0 +1,110 @@
+package com.oncethere.idtechmsraudio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free histogram of durations in microseconds.
+ *
+ * Buckets are log-linear: values below 8 get one bucket each, every power of two above that is
+ * split into 8 buckets, so a reported percentile is within 12.5% of the real one. 256 buckets
+ * cover up to 2^34 us (about 4.7 hours); longer values land in the last bucket. record() only
+ * does atomic increments and never allocates.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int BUCKET_COUNT = 256;
+  static final long MAX_VALUE = (1L << 34) - 1;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long micros) {
+    if (micros < 0) {
+      micros = 0;
+    } else if (micros > MAX_VALUE) {
+      micros = MAX_VALUE;
+    }
+    buckets.incrementAndGet(bucketOf(micros));
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+    long current;
+    while (micros > (current = max.get())) {
+      if (max.compareAndSet(current, micros)) {
+        break;
+      }
+    }
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  // Middle of the range of values that fall into bucket
+  static long valueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+    long low = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    return low + ((1L << shift) >>> 1);
+  }
+
+  public Snapshot snapshot(boolean reset) {
+    Snapshot snapshot = new Snapshot();
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot.buckets[i] = reset ? buckets.getAndSet(i, 0) : buckets.get(i);
+      total += snapshot.buckets[i];
+    }
+    //taken from the buckets so the percentiles add up even while recording goes on
+    snapshot.count = total;
+    snapshot.sum = reset ? sum.getAndSet(0) : sum.get();
+    snapshot.max = reset ? max.getAndSet(0) : max.get();
+    if (reset) {
+      count.set(0);
+    }
+    return snapshot;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public static class Snapshot {
+    final long[] buckets = new long[BUCKET_COUNT];
+    public long count;
+    public long sum;
+    public long max;
+
+    public double mean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    // Value at the given percentile (0-100), 0 if empty
+    public long percentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100.0);
+      if (rank < 1) {
+        rank = 1;
+      }
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          return Math.min(valueOf(i), max);
+        }
+      }
+      return max;
+    }
+  }
+}
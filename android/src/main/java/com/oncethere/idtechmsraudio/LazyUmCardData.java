@@ -0,0 +1,126 @@
+package com.oncethere.idtechmsraudio;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * UmCardData that only looks at the frame header up front.
+ *
+ * The constructor decides isEncrypted and rejects frames with bad framing. The frame is
+ * checksummed and indexed the first time isValid(), isAesEncrypted() or a field is asked for, and
+ * each field is copied out on its first access; both are cached. Instances can be shared between
+ * threads. cardData is not copied and must not be modified afterwards, and the arrays returned
+ * by the getters are shared by all callers.
+ */
+public final class LazyUmCardData {
+  private final byte[] byteData;
+  private final boolean isEncrypted;
+  private final boolean headerValid;
+
+  private volatile UmCardDataView view = null;
+  private AtomicReferenceArray<byte[]> fields; //set before view is published, only read after view()
+
+  public LazyUmCardData(byte[] cardData) {
+    this.byteData = cardData;
+    final int len = cardData == null ? 0 : cardData.length;
+    if (len > 0 && cardData[0] == UmFrameVerifier.STX) {
+      isEncrypted = true;
+      //STX, length and ETX, plus a complete 10 byte header. The checksums wait for view().
+      headerValid = len >= 10 + 3 && cardData[len - 1] == UmFrameVerifier.ETX
+        && ((cardData[1] & 0xFF) | ((cardData[2] & 0xFF) << 8)) + UmFrameVerifier.OVERHEAD == len;
+    } else {
+      isEncrypted = false;
+      //starts with a track sentinel and ends with the carriage return
+      headerValid = len > 1 && (cardData[0] == 0x25 || cardData[0] == 0x3B || cardData[0] == 0x7F)
+        && cardData[len - 1] == 0x0D;
+    }
+  }
+
+  public byte[] getByteData() {
+    return byteData;
+  }
+
+  //All available fields were successfully parsed from the raw data
+  public boolean isValid() {
+    return headerValid && view().isValid();
+  }
+
+  //Whether the output is from an encrypting reader or a non-encrypting reader
+  public boolean isEncrypted() {
+    return isEncrypted;
+  }
+
+  //Only valid if isEncrypted()==TRUE. If true, AES cipher is used, otherwise it's TDES
+  public boolean isAesEncrypted() {
+    //set once the checksums pass, like UmCardData
+    return isEncrypted && headerValid && view().isAesEncrypted();
+  }
+
+  public byte[] getTrack1() {
+    return field(UmCardDataView.TRACK1);
+  }
+
+  public byte[] getTrack2() {
+    return field(UmCardDataView.TRACK2);
+  }
+
+  public byte[] getTrack3() {
+    return field(UmCardDataView.TRACK3);
+  }
+
+  public byte[] getTrack1Encrypted() {
+    return field(UmCardDataView.TRACK1_ENCRYPTED);
+  }
+
+  public byte[] getTrack2Encrypted() {
+    return field(UmCardDataView.TRACK2_ENCRYPTED);
+  }
+
+  public byte[] getTrack3Encrypted() {
+    return field(UmCardDataView.TRACK3_ENCRYPTED);
+  }
+
+  public byte[] getSerialNumber() {
+    return field(UmCardDataView.SERIAL_NUMBER);
+  }
+
+  public byte[] getKSN() {
+    return field(UmCardDataView.KSN);
+  }
+
+  // Fully parsed copy, the same as new UmCardData(getByteData())
+  public UmCardData toCardData() {
+    return new UmCardData(byteData);
+  }
+
+  // The view is never touched again once published, so the volatile write is all readers need.
+  // Encrypted frames are verified here, once, so a bad checksum makes isValid() false.
+  private UmCardDataView view() {
+    UmCardDataView v = view;
+    if (v == null) {
+      synchronized (this) {
+        v = view;
+        if (v == null) {
+          v = new UmCardDataView();
+          v.parse(byteData, 0, byteData == null ? 0 : byteData.length);
+          fields = new AtomicReferenceArray<>(UmCardDataView.FIELD_COUNT);
+          view = v;
+        }
+      }
+    }
+    return v;
+  }
+
+  // Copy of the field or null if absent. Like UmCardData, tracks read before an error in an
+  // invalid unencrypted frame are still returned. Racing threads may both copy, only one copy is kept.
+  private byte[] field(int field) {
+    final UmCardDataView v = view();
+    byte[] value = fields.get(field);
+    if (value == null) {
+      value = v.copyOf(field);
+      if (value != null && !fields.compareAndSet(field, null, value)) {
+        value = fields.get(field);
+      }
+    }
+    return value;
+  }
+}
@@ -0,0 +1,130 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.charset.Charset;
+
+/**
+ * Encodes raw reader bytes into strings that can cross the React Native bridge.
+ *
+ * Every encoding is one that Buffer.from(string, encoding) decodes on the JS side. Hex and base64
+ * are built in a per-thread scratch buffer, so encoding costs only the String itself.
+ */
+public final class PayloadEncoder {
+  public static final String HEX = "hex";
+  public static final String BASE64 = "base64"; //a third fewer characters than hex
+  public static final String LATIN1 = "latin1"; //one character per byte, what command results used to be
+
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+  private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+  // Both digits of byte b at [b * 2] and [b * 2 + 1]
+  private static final char[] HEX_PAIRS = new char[256 * 2];
+  private static final char[] LOWER_HEX_PAIRS = new char[256 * 2];
+  private static final char[] BASE64_ALPHABET =
+    "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  static {
+    for (int b = 0; b < 256; b++) {
+      HEX_PAIRS[b * 2] = HEX_ARRAY[b >>> 4];
+      HEX_PAIRS[b * 2 + 1] = HEX_ARRAY[b & 0x0F];
+      LOWER_HEX_PAIRS[b * 2] = Character.toLowerCase(HEX_ARRAY[b >>> 4]);
+      LOWER_HEX_PAIRS[b * 2 + 1] = Character.toLowerCase(HEX_ARRAY[b & 0x0F]);
+    }
+  }
+
+  private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>() {
+    @Override
+    protected char[] initialValue() {
+      return new char[1024];
+    }
+  };
+
+  private PayloadEncoder() {}
+
+  public static boolean isSupported(String encoding) {
+    return HEX.equals(encoding) || BASE64.equals(encoding) || LATIN1.equals(encoding);
+  }
+
+  // Encodes with the given encoding, hex if it is not supported
+  public static String encode(String encoding, byte[] bytes, int offset, int length) {
+    if (BASE64.equals(encoding)) {
+      return bytesToBase64(bytes, offset, length);
+    }
+    if (LATIN1.equals(encoding)) {
+      return bytesToLatin1(bytes, offset, length);
+    }
+    return bytesToHex(bytes, offset, length);
+  }
+
+  public static String encode(String encoding, byte[] bytes) {
+    if (bytes == null) return "";
+    return encode(encoding, bytes, 0, bytes.length);
+  }
+
+  // Scratch buffer of the current thread, at least length chars long
+  private static char[] scratch(int length) {
+    char[] chars = SCRATCH.get();
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+      SCRATCH.set(chars);
+    }
+    return chars;
+  }
+
+  public static String bytesToHex(byte[] bytes) {
+    if (bytes == null) return "";
+    return bytesToHex(bytes, 0, bytes.length);
+  }
+
+  public static String bytesToHex(byte[] bytes, int offset, int length) {
+    return toHex(HEX_PAIRS, bytes, offset, length);
+  }
+
+  // Lower-case like Buffer.toString('hex'), for fields the JS parser also produces
+  public static String bytesToLowerHex(byte[] bytes, int offset, int length) {
+    return toHex(LOWER_HEX_PAIRS, bytes, offset, length);
+  }
+
+  private static String toHex(char[] pairs, byte[] bytes, int offset, int length) {
+    final char[] hexChars = scratch(length * 2);
+    for (int j = 0; j < length; j++) {
+      int pair = (bytes[offset + j] & 0xFF) << 1;
+      hexChars[j * 2] = pairs[pair];
+      hexChars[j * 2 + 1] = pairs[pair + 1];
+    }
+    return new String(hexChars, 0, length * 2);
+  }
+
+  // Standard alphabet with padding, no line breaks
+  public static String bytesToBase64(byte[] bytes, int offset, int length) {
+    final int outLength = (length + 2) / 3 * 4;
+    final char[] out = scratch(outLength);
+    final int end = offset + length;
+    int i = offset;
+    int o = 0;
+    for (; end - i >= 3; i += 3) {
+      int v = ((bytes[i] & 0xFF) << 16) | ((bytes[i + 1] & 0xFF) << 8) | (bytes[i + 2] & 0xFF);
+      out[o++] = BASE64_ALPHABET[v >>> 18];
+      out[o++] = BASE64_ALPHABET[(v >>> 12) & 0x3F];
+      out[o++] = BASE64_ALPHABET[(v >>> 6) & 0x3F];
+      out[o++] = BASE64_ALPHABET[v & 0x3F];
+    }
+    if (end - i == 1) {
+      int v = (bytes[i] & 0xFF) << 16;
+      out[o++] = BASE64_ALPHABET[v >>> 18];
+      out[o++] = BASE64_ALPHABET[(v >>> 12) & 0x3F];
+      out[o++] = '=';
+      out[o++] = '=';
+    } else if (end - i == 2) {
+      int v = ((bytes[i] & 0xFF) << 16) | ((bytes[i + 1] & 0xFF) << 8);
+      out[o++] = BASE64_ALPHABET[v >>> 18];
+      out[o++] = BASE64_ALPHABET[(v >>> 12) & 0x3F];
+      out[o++] = BASE64_ALPHABET[(v >>> 6) & 0x3F];
+      out[o++] = '=';
+    }
+    return new String(out, 0, o);
+  }
+
+  // The platform decoder is already a straight widening copy, no scratch buffer needed
+  public static String bytesToLatin1(byte[] bytes, int offset, int length) {
+    return new String(bytes, offset, length, ISO_8859_1);
+  }
+}
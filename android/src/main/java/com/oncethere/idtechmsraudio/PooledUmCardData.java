@@ -0,0 +1,124 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Card data held in a CardDataBufferPool buffer instead of fresh arrays.
+ *
+ * The frame is copied into one pooled buffer and indexed; fields are read-only slices of that
+ * buffer, so there is a single copy of the track data to wipe. release() zero-fills it and returns
+ * it to the pool, after which every accessor returns null or -1. Card data that has to outlive a
+ * SwipeStage should be kept this way, and the stage's source can then be wiped right away.
+ * Instances are meant to have one owner at a time; release() may be called more than once.
+ */
+public final class PooledUmCardData {
+  private static final ThreadLocal<UmCardDataView> VIEW = new ThreadLocal<UmCardDataView>() {
+    @Override
+    protected UmCardDataView initialValue() {
+      return new UmCardDataView();
+    }
+  };
+
+  private final CardDataBufferPool pool;
+  private volatile ByteBuffer frame;
+  //offset into frame at [field * 2], length at [field * 2 + 1]. Offset is -1 if the field is absent.
+  private final int[] regions = new int[UmCardDataView.FIELD_COUNT * 2];
+  private final boolean isValid;
+  private final boolean isEncrypted;
+  private final boolean isAesEncrypted;
+
+  public PooledUmCardData(CardDataBufferPool pool, byte[] cardData) {
+    this(pool, cardData, 0, cardData == null ? 0 : cardData.length);
+  }
+
+  // Copies cardData[offset, offset + length) into a pooled buffer. cardData is not kept.
+  public PooledUmCardData(CardDataBufferPool pool, byte[] cardData, int offset, int length) {
+    this.pool = pool;
+    if (cardData == null) {
+      length = 0;
+    }
+    final UmCardDataView view = VIEW.get();
+    try {
+      view.parse(cardData, offset, length);
+      isValid = view.isValid();
+      isEncrypted = view.isEncrypted();
+      isAesEncrypted = view.isAesEncrypted();
+      for (int i = 0; i < UmCardDataView.FIELD_COUNT; i++) {
+        regions[i * 2] = view.hasField(i) ? view.offsetOf(i) - offset : -1;
+        regions[i * 2 + 1] = view.lengthOf(i);
+      }
+    } finally {
+      //the thread's view must not keep the caller's card data reachable
+      view.parse(null);
+    }
+
+    ByteBuffer buffer = pool.acquire(length);
+    if (length > 0) {
+      buffer.put(cardData, offset, length);
+      buffer.flip();
+    }
+    frame = buffer;
+  }
+
+  //All available fields were successfully parsed from the raw data
+  public boolean isValid() {
+    return isValid;
+  }
+
+  //Whether the output is from an encrypting reader or a non-encrypting reader
+  public boolean isEncrypted() {
+    return isEncrypted;
+  }
+
+  //Only valid if isEncrypted()==TRUE. If true, AES cipher is used, otherwise it's TDES
+  public boolean isAesEncrypted() {
+    return isAesEncrypted;
+  }
+
+  public boolean isReleased() {
+    return frame == null;
+  }
+
+  // Read-only view of the whole frame, or null once released
+  public ByteBuffer getFrame() {
+    ByteBuffer buffer = frame;
+    return buffer == null ? null : buffer.asReadOnlyBuffer();
+  }
+
+  public boolean hasField(int field) {
+    return regions[field * 2] >= 0;
+  }
+
+  // Read-only slice of the field (see UmCardDataView for the field indexes), or null if absent or released
+  public ByteBuffer getField(int field) {
+    ByteBuffer buffer = frame;
+    if (buffer == null || !hasField(field)) {
+      return null;
+    }
+    ByteBuffer slice = buffer.asReadOnlyBuffer();
+    slice.position(regions[field * 2]);
+    slice.limit(regions[field * 2] + regions[field * 2 + 1]);
+    return slice.slice();
+  }
+
+  // Copies the field into dst and returns its length, or -1 if absent or released
+  public int copyField(int field, byte[] dst, int dstOffset) {
+    ByteBuffer slice = getField(field);
+    if (slice == null) {
+      return -1;
+    }
+    int length = slice.remaining();
+    slice.get(dst, dstOffset, length);
+    return length;
+  }
+
+  // Zero-fills the frame and gives its buffer back to the pool
+  public void release() {
+    ByteBuffer buffer;
+    synchronized (this) {
+      buffer = frame;
+      frame = null;
+    }
+    pool.release(buffer);
+  }
+}
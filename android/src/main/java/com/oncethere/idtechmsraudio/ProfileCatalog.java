@@ -0,0 +1,318 @@
+package com.oncethere.idtechmsraudio;
+
+import IDTech.MSR.XMLManager.StructConfigParameters;
+
+import android.content.Context;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Known-good auto config profiles by handset manufacturer/model, ranked by how often they worked.
+ *
+ * activate() tries the best candidates for the current handset with connectWithProfile() before
+ * running the full auto config sweep. Profiles found by auto config, and candidates that
+ * connected, are recorded as successes; candidates that did not connect as failures.
+ *
+ * The catalog is one file, which is also the bundle format of exportBundle()/importBundle().
+ * Big endian: magic, version, entry count, then per entry model length short, UTF-8 model,
+ * successes int, failures int, lastSuccess long, AutoConfigProfile record, then a CRC32 of it all.
+ */
+public class ProfileCatalog {
+  static final String FILENAME = "umProfileCatalog.bin";
+  static final int CATALOG_MAGIC = 0x554D5043; //"UMPC"
+  static final short CATALOG_VERSION = 1;
+  static final int MAX_PROFILES_PER_MODEL = 8;
+  static final int MAX_ENTRIES = 4096;
+  static final int MAX_FILE_LENGTH = 4 * 1024 * 1024;
+  private static final int ENTRY_FIXED_LENGTH = 2 + 4 + 4 + 8 + AutoConfigProfile.RECORD_LENGTH;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  public static class Entry {
+    public final String model;
+    final byte[] record;
+    public int successes;
+    public int failures;
+    public long lastSuccess;
+
+    Entry(String model, byte[] record) {
+      this.model = model;
+      this.record = record;
+    }
+
+    public StructConfigParameters toProfile() {
+      return AutoConfigProfile.fromBytes(record).toProfile();
+    }
+  }
+
+  // Best first: highest smoothed success rate, then most successes, then most recent
+  private static final Comparator<Entry> RANKING = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      double rankA = (a.successes + 1.0) / (a.successes + a.failures + 2.0);
+      double rankB = (b.successes + 1.0) / (b.successes + b.failures + 2.0);
+      if (rankA != rankB) {
+        return rankA > rankB ? -1 : 1;
+      }
+      if (a.successes != b.successes) {
+        return a.successes > b.successes ? -1 : 1;
+      }
+      return a.lastSuccess > b.lastSuccess ? -1 : (a.lastSuccess == b.lastSuccess ? 0 : 1);
+    }
+  };
+
+  private final File file;
+  private final Map<String, List<Entry>> models = new HashMap<>();
+  private boolean loaded = false;
+
+  public ProfileCatalog(Context context) {
+    this.file = new File(context.getFilesDir(), FILENAME);
+  }
+
+  public static String deviceModel() {
+    return Build.MANUFACTURER + "/" + Build.MODEL;
+  }
+
+  // Up to limit profiles for model, best first
+  public synchronized List<StructConfigParameters> candidates(String model, int limit) {
+    load();
+    List<StructConfigParameters> result = new ArrayList<>();
+    List<Entry> entries = models.get(model);
+    if (entries == null) {
+      return result;
+    }
+    for (int i = 0; i < entries.size() && i < limit; i++) {
+      result.add(entries.get(i).toProfile());
+    }
+    return result;
+  }
+
+  public synchronized void recordSuccess(String model, StructConfigParameters profile) {
+    load();
+    Entry entry = entryFor(model, toRecord(profile));
+    entry.successes++;
+    entry.lastSuccess = System.currentTimeMillis();
+    rank(model);
+    save();
+  }
+
+  public synchronized void recordFailure(String model, StructConfigParameters profile) {
+    load();
+    List<Entry> entries = models.get(model);
+    Entry entry = entries == null ? null : find(entries, toRecord(profile));
+    //only known profiles are worth keeping a failure count for
+    if (entry != null) {
+      entry.failures++;
+      rank(model);
+      save();
+    }
+  }
+
+  public synchronized List<Entry> list() {
+    load();
+    List<Entry> result = new ArrayList<>();
+    for (List<Entry> entries : models.values()) {
+      result.addAll(entries);
+    }
+    return result;
+  }
+
+  public synchronized byte[] exportBundle() {
+    load();
+    return toBytes(list());
+  }
+
+  // Merges a bundle into the catalog, adding up the counts of profiles already known.
+  // Returns the number of entries read, or -1 if the bundle is damaged.
+  public synchronized int importBundle(byte[] bundle) {
+    load();
+    List<Entry> imported = fromBytes(bundle);
+    if (imported == null) {
+      return -1;
+    }
+    for (Entry entry : imported) {
+      Entry existing = entryFor(entry.model, entry.record);
+      existing.successes += entry.successes;
+      existing.failures += entry.failures;
+      existing.lastSuccess = Math.max(existing.lastSuccess, entry.lastSuccess);
+    }
+    for (String model : new ArrayList<>(models.keySet())) {
+      rank(model);
+    }
+    save();
+    return imported.size();
+  }
+
+  private Entry entryFor(String model, byte[] record) {
+    List<Entry> entries = models.get(model);
+    if (entries == null) {
+      entries = new ArrayList<>();
+      models.put(model, entries);
+    }
+    Entry entry = find(entries, record);
+    if (entry == null) {
+      entry = new Entry(model, record);
+      entries.add(entry);
+    }
+    return entry;
+  }
+
+  private static Entry find(List<Entry> entries, byte[] record) {
+    for (Entry entry : entries) {
+      if (Arrays.equals(entry.record, record)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  // Sorts the model's profiles and drops the worst beyond MAX_PROFILES_PER_MODEL
+  private void rank(String model) {
+    List<Entry> entries = models.get(model);
+    if (entries == null) {
+      return;
+    }
+    Collections.sort(entries, RANKING);
+    while (entries.size() > MAX_PROFILES_PER_MODEL) {
+      entries.remove(entries.size() - 1);
+    }
+  }
+
+  private static byte[] toRecord(StructConfigParameters profile) {
+    AutoConfigProfile record = new AutoConfigProfile();
+    record.setProfile(profile);
+    return record.toBytes();
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (!file.exists()) {
+      return;
+    }
+    List<Entry> entries = null;
+    try {
+      long length = file.length();
+      if (length <= MAX_FILE_LENGTH) {
+        entries = fromBytes(AutoConfigProfile.readFully(file, (int) length));
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    if (entries == null) {
+      //damaged, start over rather than fail every activation
+      file.delete();
+      return;
+    }
+    for (Entry entry : entries) {
+      Entry existing = entryFor(entry.model, entry.record);
+      existing.successes = entry.successes;
+      existing.failures = entry.failures;
+      existing.lastSuccess = entry.lastSuccess;
+    }
+    for (String model : new ArrayList<>(models.keySet())) {
+      rank(model);
+    }
+  }
+
+  private void save() {
+    try {
+      AutoConfigProfile.writeAtomically(file, toBytes(list()));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  static byte[] toBytes(List<Entry> entries) {
+    if (entries.size() > MAX_ENTRIES) {
+      entries = entries.subList(0, MAX_ENTRIES);
+    }
+    int length = 4 + 2 + 4 + 4;
+    List<byte[]> names = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      byte[] name = entry.model.getBytes(UTF_8);
+      if (name.length > 0xFFFF) {
+        name = Arrays.copyOf(name, 0xFFFF);
+      }
+      names.add(name);
+      length += ENTRY_FIXED_LENGTH + name.length;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    buffer.putInt(CATALOG_MAGIC);
+    buffer.putShort(CATALOG_VERSION);
+    buffer.putInt(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      byte[] name = names.get(i);
+      buffer.putShort((short) name.length);
+      buffer.put(name);
+      buffer.putInt(entry.successes);
+      buffer.putInt(entry.failures);
+      buffer.putLong(entry.lastSuccess);
+      buffer.put(entry.record);
+    }
+    buffer.putInt(AutoConfigProfile.crc(buffer.array(), 0, buffer.position()));
+    return buffer.array();
+  }
+
+  // Returns null if the data is damaged or of an unknown version
+  static List<Entry> fromBytes(byte[] data) {
+    if (data == null || data.length < 4 + 2 + 4 + 4) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    if (buffer.getInt() != CATALOG_MAGIC || buffer.getShort() != CATALOG_VERSION) {
+      return null;
+    }
+    if (buffer.getInt(data.length - 4) != AutoConfigProfile.crc(data, 0, data.length - 4)) {
+      return null;
+    }
+    int count = buffer.getInt();
+    if (count < 0 || count > MAX_ENTRIES) {
+      return null;
+    }
+    buffer.limit(data.length - 4);
+    List<Entry> entries = new ArrayList<>(count);
+    try {
+      for (int i = 0; i < count; i++) {
+        int nameLength = buffer.getShort() & 0xFFFF;
+        String model = new String(data, buffer.position(), Math.min(nameLength, buffer.remaining()), UTF_8);
+        buffer.position(buffer.position() + nameLength);
+        int successes = buffer.getInt();
+        int failures = buffer.getInt();
+        long lastSuccess = buffer.getLong();
+        byte[] record = new byte[AutoConfigProfile.RECORD_LENGTH];
+        buffer.get(record);
+        if (AutoConfigProfile.fromBytes(record) == null) {
+          return null;
+        }
+        Entry entry = new Entry(model, record);
+        entry.successes = Math.max(0, successes);
+        entry.failures = Math.max(0, failures);
+        entry.lastSuccess = lastSuccess;
+        entries.add(entry);
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      return null;
+    }
+    if (buffer.hasRemaining()) {
+      return null;
+    }
+    return entries;
+  }
+}
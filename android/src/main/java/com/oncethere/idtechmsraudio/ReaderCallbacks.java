@@ -0,0 +1,241 @@
+package com.oncethere.idtechmsraudio;
+
+import IDTech.MSR.XMLManager.StructConfigParameters;
+import IDTech.MSR.uniMag.uniMagReaderMsg;
+
+import android.os.Handler;
+
+/**
+ * Forwards uniMagReaderMsg callbacks from the SDK's own threads to the reader thread, in the
+ * order they arrived.
+ *
+ * getUserGrant() is the exception: the SDK waits for its answer, so it runs on the calling thread.
+ * Each callback is traced as an instant when it arrives and as a span while it runs.
+ */
+public class ReaderCallbacks implements uniMagReaderMsg {
+  private final uniMagReaderMsg target;
+  private final Handler handler;
+  private final ReaderTracer tracer;
+
+  public ReaderCallbacks(uniMagReaderMsg target, Handler handler, ReaderTracer tracer) {
+    this.target = target;
+    this.handler = handler;
+    this.tracer = tracer;
+  }
+
+  public void onReceiveMsgToConnect() {
+    tracer.instant("onReceiveMsgToConnect");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgToConnect");
+        try {
+          target.onReceiveMsgToConnect();
+        } finally {
+          tracer.end("onReceiveMsgToConnect");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgConnected() {
+    tracer.instant("onReceiveMsgConnected");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgConnected");
+        try {
+          target.onReceiveMsgConnected();
+        } finally {
+          tracer.end("onReceiveMsgConnected");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgDisconnected() {
+    tracer.instant("onReceiveMsgDisconnected");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgDisconnected");
+        try {
+          target.onReceiveMsgDisconnected();
+        } finally {
+          tracer.end("onReceiveMsgDisconnected");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgTimeout(final String strTimeoutMsg) {
+    tracer.instant("onReceiveMsgTimeout");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgTimeout");
+        try {
+          target.onReceiveMsgTimeout(strTimeoutMsg);
+        } finally {
+          tracer.end("onReceiveMsgTimeout");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgToSwipeCard() {
+    tracer.instant("onReceiveMsgToSwipeCard");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgToSwipeCard");
+        try {
+          target.onReceiveMsgToSwipeCard();
+        } finally {
+          tracer.end("onReceiveMsgToSwipeCard");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgCommandResult(final int commandID, final byte[] cmdReturn) {
+    tracer.instant("onReceiveMsgCommandResult");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgCommandResult");
+        try {
+          target.onReceiveMsgCommandResult(commandID, cmdReturn);
+        } finally {
+          tracer.end("onReceiveMsgCommandResult");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgCardData(final byte flagOfCardData, final byte[] cardData) {
+    tracer.instant("onReceiveMsgCardData");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgCardData");
+        try {
+          target.onReceiveMsgCardData(flagOfCardData, cardData);
+        } finally {
+          tracer.end("onReceiveMsgCardData");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgProcessingCardData() {
+    tracer.instant("onReceiveMsgProcessingCardData");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgProcessingCardData");
+        try {
+          target.onReceiveMsgProcessingCardData();
+        } finally {
+          tracer.end("onReceiveMsgProcessingCardData");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgToCalibrateReader() {
+    tracer.instant("onReceiveMsgToCalibrateReader");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgToCalibrateReader");
+        try {
+          target.onReceiveMsgToCalibrateReader();
+        } finally {
+          tracer.end("onReceiveMsgToCalibrateReader");
+        }
+      }
+    });
+  }
+
+  @Deprecated
+  public void onReceiveMsgSDCardDFailed(final String strMSRData) {
+    tracer.instant("onReceiveMsgSDCardDFailed");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgSDCardDFailed");
+        try {
+          target.onReceiveMsgSDCardDFailed(strMSRData);
+        } finally {
+          tracer.end("onReceiveMsgSDCardDFailed");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgFailureInfo(final int index, final String strMessage) {
+    tracer.instant("onReceiveMsgFailureInfo");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgFailureInfo");
+        try {
+          target.onReceiveMsgFailureInfo(index, strMessage);
+        } finally {
+          tracer.end("onReceiveMsgFailureInfo");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgAutoConfigProgress(final int progressValue) {
+    tracer.instant("onReceiveMsgAutoConfigProgress");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgAutoConfigProgress");
+        try {
+          target.onReceiveMsgAutoConfigProgress(progressValue);
+        } finally {
+          tracer.end("onReceiveMsgAutoConfigProgress");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgAutoConfigProgress(final int percent, final double res, final String profileName) {
+    tracer.instant("onReceiveMsgAutoConfigProgress");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgAutoConfigProgress");
+        try {
+          target.onReceiveMsgAutoConfigProgress(percent, res, profileName);
+        } finally {
+          tracer.end("onReceiveMsgAutoConfigProgress");
+        }
+      }
+    });
+  }
+
+  public void onReceiveMsgAutoConfigCompleted(final StructConfigParameters profile) {
+    tracer.instant("onReceiveMsgAutoConfigCompleted");
+    handler.post(new Runnable() {
+      @Override
+      public void run() {
+        tracer.begin("onReceiveMsgAutoConfigCompleted");
+        try {
+          target.onReceiveMsgAutoConfigCompleted(profile);
+        } finally {
+          tracer.end("onReceiveMsgAutoConfigCompleted");
+        }
+      }
+    });
+  }
+
+  public boolean getUserGrant(int type, String strMessage) {
+    tracer.instant("getUserGrant");
+    return target.getUserGrant(type, strMessage);
+  }
+}
@@ -0,0 +1,185 @@
+package com.oncethere.idtechmsraudio;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Reader lifecycle timings and counts, fed from the uniMagReaderMsg callbacks.
+ *
+ * Every phase start is a timestamp that the matching end callback takes and clears, so an end
+ * without a start (e.g. a warm activate) is counted but not timed. Nothing on the record path
+ * locks or allocates; snapshot() does both.
+ */
+public class ReaderMetrics {
+  //Histograms
+  public static final int CONNECT = 0; //onReceiveMsgToConnect to onReceiveMsgConnected
+  public static final int AUTOCONFIG = 1; //startAutoConfig to onReceiveMsgAutoConfigCompleted
+  public static final int SWIPE_WAIT = 2; //onReceiveMsgToSwipeCard to onReceiveMsgProcessingCardData
+  public static final int SWIPE_DECODE = 3; //onReceiveMsgProcessingCardData to onReceiveMsgCardData
+  public static final int SWIPE_TOTAL = 4; //onReceiveMsgToSwipeCard to onReceiveMsgCardData
+  static final String[] HISTOGRAM_NAMES = {"connect", "autoconfig", "swipeWait", "swipeDecode", "swipeTotal"};
+
+  //Counters
+  public static final int CONNECTED = 0;
+  public static final int WARM_ACTIVATIONS = 1;
+  public static final int DISCONNECTED = 2;
+  public static final int SWIPES = 3;
+  public static final int CARD_DATA = 4;
+  public static final int AUTOCONFIG_COMPLETED = 5;
+  public static final int SWIPE_TIMEOUTS = 6;
+  public static final int AUTOCONFIG_TIMEOUTS = 7;
+  public static final int CONNECTION_TIMEOUTS = 8;
+  public static final int DEVICE_UNSUPPORTED = 9;
+  public static final int REARMS = 10; //swipes started by continuous swipe mode
+  public static final int DUPLICATES = 11; //card data seen again within the dedupe window
+  public static final int JOURNAL_FULL = 12; //swipes not journaled, unacknowledged swipes filled the journal
+  static final String[] COUNTER_NAMES = {
+    "connected", "warmActivations", "disconnected", "swipes", "cardData", "autoconfigCompleted",
+    "swipeTimeouts", "autoconfigTimeouts", "connectionTimeouts", "deviceUnsupported",
+    "rearms", "duplicates", "journalFull"
+  };
+
+  // onReceiveMsgFailureInfo indexes at or above this are counted together
+  static final int FAILURE_SLOTS = 16;
+
+  private static final double[] PERCENTILES = {50, 90, 99};
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[HISTOGRAM_NAMES.length];
+  private final AtomicLongArray counters = new AtomicLongArray(COUNTER_NAMES.length);
+  private final AtomicLongArray failures = new AtomicLongArray(FAILURE_SLOTS + 1);
+
+  private final AtomicLong connectStart = new AtomicLong();
+  private final AtomicLong autoConfigStart = new AtomicLong();
+  private final AtomicLong swipeStart = new AtomicLong();
+  private final AtomicLong processingStart = new AtomicLong();
+
+  public ReaderMetrics() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  private static long now() {
+    //never 0, which marks a phase that has not started
+    return (System.nanoTime() / 1000) | 1;
+  }
+
+  // Records the time since start, if it was set, and clears it
+  private void end(AtomicLong start, int histogram, long now) {
+    long began = start.getAndSet(0);
+    if (began != 0) {
+      histograms[histogram].record(now - began);
+    }
+  }
+
+  public void increment(int counter) {
+    counters.incrementAndGet(counter);
+  }
+
+  public void onConnecting() {
+    connectStart.set(now());
+  }
+
+  public void onConnected() {
+    counters.incrementAndGet(CONNECTED);
+    end(connectStart, CONNECT, now());
+  }
+
+  public void onDisconnected() {
+    counters.incrementAndGet(DISCONNECTED);
+    connectStart.set(0);
+    swipeStart.set(0);
+    processingStart.set(0);
+  }
+
+  public void onAutoConfigStarted() {
+    autoConfigStart.set(now());
+  }
+
+  public void onAutoConfigCompleted() {
+    counters.incrementAndGet(AUTOCONFIG_COMPLETED);
+    end(autoConfigStart, AUTOCONFIG, now());
+  }
+
+  public void onSwiping() {
+    counters.incrementAndGet(SWIPES);
+    swipeStart.set(now());
+    processingStart.set(0);
+  }
+
+  public void onProcessingCardData() {
+    long now = now();
+    long began = swipeStart.get();
+    if (began != 0) {
+      histograms[SWIPE_WAIT].record(now - began);
+    }
+    processingStart.set(now);
+  }
+
+  public void onCardData() {
+    long now = now();
+    counters.incrementAndGet(CARD_DATA);
+    end(processingStart, SWIPE_DECODE, now);
+    end(swipeStart, SWIPE_TOTAL, now);
+  }
+
+  // A timeout ends whatever phase it belongs to without timing it
+  public void onTimeout(int counter) {
+    counters.incrementAndGet(counter);
+    switch (counter) {
+      case SWIPE_TIMEOUTS:
+        swipeStart.set(0);
+        processingStart.set(0);
+        break;
+      case AUTOCONFIG_TIMEOUTS:
+        autoConfigStart.set(0);
+        break;
+      default:
+        connectStart.set(0);
+        break;
+    }
+  }
+
+  public void onFailure(int index) {
+    failures.incrementAndGet(index >= 0 && index < FAILURE_SLOTS ? index : FAILURE_SLOTS);
+  }
+
+  // Durations are in milliseconds
+  public WritableMap snapshot(boolean reset) {
+    WritableMap result = Arguments.createMap();
+
+    WritableMap latencies = Arguments.createMap();
+    for (int i = 0; i < histograms.length; i++) {
+      LatencyHistogram.Snapshot snapshot = histograms[i].snapshot(reset);
+      WritableMap histogram = Arguments.createMap();
+      histogram.putDouble("count", snapshot.count);
+      histogram.putDouble("mean", snapshot.mean() / 1000.0);
+      for (double percentile : PERCENTILES) {
+        histogram.putDouble("p" + (int) percentile, snapshot.percentile(percentile) / 1000.0);
+      }
+      histogram.putDouble("max", snapshot.max / 1000.0);
+      latencies.putMap(HISTOGRAM_NAMES[i], histogram);
+    }
+    result.putMap("latencies", latencies);
+
+    WritableMap counts = Arguments.createMap();
+    for (int i = 0; i < COUNTER_NAMES.length; i++) {
+      counts.putDouble(COUNTER_NAMES[i], reset ? counters.getAndSet(i, 0) : counters.get(i));
+    }
+    result.putMap("counters", counts);
+
+    //keyed by index, "other" for anything past FAILURE_SLOTS
+    WritableMap failureCounts = Arguments.createMap();
+    for (int i = 0; i <= FAILURE_SLOTS; i++) {
+      long count = reset ? failures.getAndSet(i, 0) : failures.get(i);
+      if (count > 0) {
+        failureCounts.putDouble(i == FAILURE_SLOTS ? "other" : Integer.toString(i), count);
+      }
+    }
+    result.putMap("failures", failureCounts);
+    return result;
+  }
+}
@@ -0,0 +1,142 @@
+package com.oncethere.idtechmsraudio;
+
+import com.facebook.react.bridge.ReadableMap;
+
+// Behaviour switches set from JS through configure(). Unknown keys are ignored.
+public class ReaderOptions {
+  // Emit swipe_received with tracks, KSN etc. already split out instead of a hex blob
+  public boolean structuredSwipe = false;
+  // Include the raw frame as hex in structured swipe events
+  public boolean includeRawData = false;
+  // Minimum time between two autoconfig_progress events. Only the latest one is kept; 0 sends all.
+  public int coalesceIntervalMs = 100;
+  // Up to this many informational events are sent as one event_batch event; 1 disables batching
+  public int batchSize = 1;
+  // Longest time an informational event waits for a batch to fill
+  public int batchWindowMs = 50;
+  // Saved auto config profiles older than this are discarded; 0 keeps them forever
+  public int profileMaxAgeDays = 180;
+  // Most auto config profiles kept; the least recently used ones go first
+  public int maxProfiles = AutoConfigProfileStore.DEFAULT_MAX_ENTRIES;
+  // deactivate() only suspends the reader, so the next activate() can reuse the connection
+  public boolean keepWarm = false;
+  // A suspended reader is released after this long; 0 never releases it on its own
+  public int idleTimeoutMs = 5 * 60 * 1000;
+  // Catalog profiles of the same handset model tried before a full auto config; 0 always runs auto config
+  public int catalogCandidates = 3;
+  // Mask PAN and discretionary data of unencrypted readers' tracks before they leave the module
+  public boolean maskClearTracks = false;
+  // Encoding of swipe data and of command results, see PayloadEncoder. Applied at the next activate().
+  public String swipeEncoding = PayloadEncoder.HEX;
+  public String commandEncoding = PayloadEncoder.LATIN1;
+  // Hold swipes queued for export in direct (off-heap) buffers, see getCardDataPool()
+  public boolean directBuffers = false;
+  // Most released card data buffers kept for reuse
+  public int bufferPoolSize = CardDataBufferPool.DEFAULT_MAX_POOLED;
+  // Continuous swipe mode: least time between two swipes started by the module
+  public int rearmIntervalMs = 250;
+  // and the first and longest wait before starting another swipe after a failure
+  public int rearmBackoffMs = 500;
+  public int rearmMaxBackoffMs = 10000;
+  // Card data seen again within this long is a duplicate (e.g. a double read); 0 lets duplicates through
+  public int dedupeWindowMs = 0;
+  // Drop duplicates; otherwise they are sent with duplicate set
+  public boolean dropDuplicates = true;
+  // Keep encrypted swipes in a journal in app storage until acknowledgeSwipe(), replaying them at activate()
+  public boolean journal = false;
+  // Export swipes in batches to a file in app storage (capture format) or to a local socket, see SwipeExporter
+  public String exportFile = null;
+  public String exportSocket = null;
+  // A batch is exported once it has this many swipes, or its first swipe is this old
+  public int exportBatchSize = SwipeExporter.DEFAULT_BATCH_SIZE;
+  public int exportBatchAgeMs = SwipeExporter.DEFAULT_BATCH_AGE_MS;
+  // Swipes waiting for export, and what happens to another one when that many are
+  public int exportQueueSize = SwipeExporter.DEFAULT_QUEUE_SIZE;
+  public SwipeExporter.Overflow exportOverflow = SwipeExporter.Overflow.DROP_OLDEST;
+
+  public void apply(ReadableMap options) {
+    if (options == null) return;
+
+    if (options.hasKey("structuredSwipe")) {
+      structuredSwipe = options.getBoolean("structuredSwipe");
+    }
+    if (options.hasKey("includeRawData")) {
+      includeRawData = options.getBoolean("includeRawData");
+    }
+    if (options.hasKey("coalesceIntervalMs")) {
+      coalesceIntervalMs = options.getInt("coalesceIntervalMs");
+    }
+    if (options.hasKey("batchSize")) {
+      batchSize = options.getInt("batchSize");
+    }
+    if (options.hasKey("batchWindowMs")) {
+      batchWindowMs = options.getInt("batchWindowMs");
+    }
+    if (options.hasKey("profileMaxAgeDays")) {
+      profileMaxAgeDays = options.getInt("profileMaxAgeDays");
+    }
+    if (options.hasKey("maxProfiles")) {
+      maxProfiles = options.getInt("maxProfiles");
+    }
+    if (options.hasKey("keepWarm")) {
+      keepWarm = options.getBoolean("keepWarm");
+    }
+    if (options.hasKey("idleTimeoutMs")) {
+      idleTimeoutMs = options.getInt("idleTimeoutMs");
+    }
+    if (options.hasKey("catalogCandidates")) {
+      catalogCandidates = options.getInt("catalogCandidates");
+    }
+    if (options.hasKey("maskClearTracks")) {
+      maskClearTracks = options.getBoolean("maskClearTracks");
+    }
+    if (options.hasKey("swipeEncoding") && PayloadEncoder.isSupported(options.getString("swipeEncoding"))) {
+      swipeEncoding = options.getString("swipeEncoding");
+    }
+    if (options.hasKey("commandEncoding") && PayloadEncoder.isSupported(options.getString("commandEncoding"))) {
+      commandEncoding = options.getString("commandEncoding");
+    }
+    if (options.hasKey("directBuffers")) {
+      directBuffers = options.getBoolean("directBuffers");
+    }
+    if (options.hasKey("bufferPoolSize")) {
+      bufferPoolSize = options.getInt("bufferPoolSize");
+    }
+    if (options.hasKey("rearmIntervalMs")) {
+      rearmIntervalMs = options.getInt("rearmIntervalMs");
+    }
+    if (options.hasKey("rearmBackoffMs")) {
+      rearmBackoffMs = options.getInt("rearmBackoffMs");
+    }
+    if (options.hasKey("rearmMaxBackoffMs")) {
+      rearmMaxBackoffMs = options.getInt("rearmMaxBackoffMs");
+    }
+    if (options.hasKey("dedupeWindowMs")) {
+      dedupeWindowMs = options.getInt("dedupeWindowMs");
+    }
+    if (options.hasKey("dropDuplicates")) {
+      dropDuplicates = options.getBoolean("dropDuplicates");
+    }
+    if (options.hasKey("journal")) {
+      journal = options.getBoolean("journal");
+    }
+    if (options.hasKey("exportFile")) {
+      exportFile = options.isNull("exportFile") ? null : options.getString("exportFile");
+    }
+    if (options.hasKey("exportSocket")) {
+      exportSocket = options.isNull("exportSocket") ? null : options.getString("exportSocket");
+    }
+    if (options.hasKey("exportBatchSize")) {
+      exportBatchSize = options.getInt("exportBatchSize");
+    }
+    if (options.hasKey("exportBatchAgeMs")) {
+      exportBatchAgeMs = options.getInt("exportBatchAgeMs");
+    }
+    if (options.hasKey("exportQueueSize")) {
+      exportQueueSize = options.getInt("exportQueueSize");
+    }
+    if (options.hasKey("exportOverflow") && SwipeExporter.Overflow.fromLabel(options.getString("exportOverflow")) != null) {
+      exportOverflow = SwipeExporter.Overflow.fromLabel(options.getString("exportOverflow"));
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.oncethere.idtechmsraudio;
+
+import IDTech.MSR.XMLManager.StructConfigParameters;
+import IDTech.MSR.uniMag.uniMagReader;
+import IDTech.MSR.uniMag.uniMagReader.ReaderType;
+import IDTech.MSR.uniMag.uniMagReaderMsg;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+
+/**
+ * Owns the uniMagReader and keeps it connected between transactions.
+ *
+ * acquire() hands back the connected reader when the reader type and the auto config profile it
+ * connected with are unchanged, so activate() can skip the connection handshake. suspend() only
+ * stops swiping and leaves the audio pipeline up; the reader is released for real by release(),
+ * or once it has been suspended for longer than the idle timeout.
+ */
+public class ReaderSession {
+  private final uniMagReaderMsg listener;
+  private final Context context;
+  private final Handler handler;
+
+  private uniMagReader reader = null;
+  private ReaderType readerType = null;
+  private String profileKey = null;
+  private byte[] profile = null; //AutoConfigProfile record the reader connected with, null if none
+  private boolean suspended = false;
+
+  private final Runnable idleRelease = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (ReaderSession.this) {
+        if (suspended) {
+          release();
+        }
+      }
+    }
+  };
+
+  public ReaderSession(uniMagReaderMsg listener, Context context) {
+    this(listener, context, new Handler(Looper.getMainLooper()));
+  }
+
+  public ReaderSession(uniMagReaderMsg listener, Context context, Handler handler) {
+    this.listener = listener;
+    this.context = context;
+    this.handler = handler;
+  }
+
+  // The current reader, or null if released
+  public synchronized uniMagReader getReader() {
+    return reader;
+  }
+
+  // True if a reader of this type is connected with this profile and can be used as is
+  public synchronized boolean isWarm(ReaderType type, String key, StructConfigParameters acProfile) {
+    return reader != null
+      && type == readerType
+      && key != null && key.equals(profileKey)
+      && acProfile != null && Arrays.equals(profile, toRecord(acProfile))
+      && reader.isReaderConnected();
+  }
+
+  // Returns the warm reader if isWarm(), otherwise releases it and creates a new, unconnected one
+  public synchronized uniMagReader acquire(ReaderType type, String key, StructConfigParameters acProfile) {
+    handler.removeCallbacks(idleRelease);
+    suspended = false;
+    if (isWarm(type, key, acProfile)) {
+      return reader;
+    }
+
+    release();
+    reader = new uniMagReader(listener, context, type);
+    reader.registerListen();
+    readerType = type;
+    profileKey = key;
+    return reader;
+  }
+
+  public synchronized boolean connectWithProfile(StructConfigParameters acProfile) {
+    if (reader == null) {
+      return false;
+    }
+    profile = toRecord(acProfile);
+    return reader.connectWithProfile(acProfile);
+  }
+
+  // Stops swiping but stays connected. After idleTimeoutMs the reader is released; 0 keeps it until release().
+  public synchronized void suspend(long idleTimeoutMs) {
+    if (reader == null) {
+      return;
+    }
+    reader.stopSwipeCard();
+    suspended = true;
+    handler.removeCallbacks(idleRelease);
+    if (idleTimeoutMs > 0) {
+      handler.postDelayed(idleRelease, idleTimeoutMs);
+    }
+  }
+
+  public synchronized boolean isSuspended() {
+    return suspended;
+  }
+
+  public synchronized void release() {
+    handler.removeCallbacks(idleRelease);
+    suspended = false;
+    if (reader != null) {
+      reader.stopSwipeCard();
+      reader.unregisterListen();
+      reader.release();
+      reader = null;
+    }
+    readerType = null;
+    profileKey = null;
+    profile = null;
+  }
+
+  private static byte[] toRecord(StructConfigParameters acProfile) {
+    AutoConfigProfile record = new AutoConfigProfile();
+    record.setProfile(acProfile);
+    return record.toBytes();
+  }
+}
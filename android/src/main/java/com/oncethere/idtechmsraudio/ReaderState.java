@@ -0,0 +1,115 @@
+package com.oncethere.idtechmsraudio;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Where the reader is in its lifecycle, held in one atomic field.
+ *
+ * React methods claim their transition with a compare-and-set on the calling thread and are
+ * rejected right there, with the UmRet code to resolve, if the reader is in the wrong state.
+ * SDK callbacks move the state on with transition(), which only applies from the states the
+ * callback is expected in, so late callbacks of a released reader cannot revive it.
+ */
+public class ReaderState {
+  public enum State {
+    IDLE, //not activated, suspended, or the connection failed
+    AUTOCONFIGURING,
+    CONNECTING,
+    CONNECTED,
+    SWIPING,
+    PROCESSING, //card data is being read
+    RELEASED; //deactivated
+
+    public final int bit() {
+      return 1 << ordinal();
+    }
+
+    // Name as reported to JS
+    public String label() {
+      return name().toLowerCase();
+    }
+  }
+
+  public static final int IDLE = State.IDLE.bit();
+  public static final int AUTOCONFIGURING = State.AUTOCONFIGURING.bit();
+  public static final int CONNECTING = State.CONNECTING.bit();
+  public static final int CONNECTED = State.CONNECTED.bit();
+  public static final int SWIPING = State.SWIPING.bit();
+  public static final int PROCESSING = State.PROCESSING.bit();
+  public static final int RELEASED = State.RELEASED.bit();
+
+  public static final int INACTIVE = IDLE | RELEASED;
+  public static final int STARTING = AUTOCONFIGURING | CONNECTING;
+  public static final int ACTIVE = CONNECTED | SWIPING | PROCESSING;
+
+  private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+
+  public State get() {
+    return state.get();
+  }
+
+  public void set(State to) {
+    state.set(to);
+  }
+
+  // Moves to `to` if the current state is one of `from`. Returns whether it did.
+  public boolean transition(int from, State to) {
+    for (;;) {
+      State current = state.get();
+      if ((current.bit() & from) == 0) {
+        return false;
+      }
+      if (state.compareAndSet(current, to)) {
+        return true;
+      }
+    }
+  }
+
+  // activate(): idle or released to connecting
+  public UmRet beginActivate() {
+    for (;;) {
+      State current = state.get();
+      if ((current.bit() & ACTIVE) != 0) {
+        return UmRet.UMRET_ALREADY_CONNECTED;
+      }
+      if ((current.bit() & STARTING) != 0) {
+        return UmRet.UMRET_SDK_BUSY;
+      }
+      if (state.compareAndSet(current, State.CONNECTING)) {
+        return UmRet.UMRET_SUCCESS;
+      }
+    }
+  }
+
+  // swipe(): connected to swiping
+  public UmRet beginSwipe() {
+    for (;;) {
+      State current = state.get();
+      if ((current.bit() & INACTIVE) != 0) {
+        return UmRet.UMRET_NOT_CONNECTED;
+      }
+      if (current != State.CONNECTED) {
+        return UmRet.UMRET_SDK_BUSY;
+      }
+      if (state.compareAndSet(current, State.SWIPING)) {
+        return UmRet.UMRET_SUCCESS;
+      }
+    }
+  }
+
+  // suspend(): anything but connecting to idle. A released reader has nothing to suspend.
+  public UmRet beginSuspend() {
+    for (;;) {
+      State current = state.get();
+      if (current == State.RELEASED) {
+        return UmRet.UMRET_NO_READER;
+      }
+      if ((current.bit() & STARTING) != 0) {
+        return UmRet.UMRET_SDK_BUSY;
+      }
+      if (state.compareAndSet(current, State.IDLE)) {
+        return UmRet.UMRET_SUCCESS;
+      }
+    }
+  }
+}
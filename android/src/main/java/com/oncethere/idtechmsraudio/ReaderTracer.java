@@ -0,0 +1,132 @@
+package com.oncethere.idtechmsraudio;
+
+import android.os.Process;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Optional timeline of React method spans and SDK callbacks, dumped as Chrome Trace Event JSON
+ * (load it in chrome://tracing or Perfetto).
+ *
+ * Events go into a ring buffer of parallel arrays allocated by enable(). The oldest events are
+ * overwritten once it is full. Names must be constants, since only the reference is kept. While
+ * disabled, begin(), end() and instant() are a single volatile read.
+ */
+public class ReaderTracer {
+  public static final int DEFAULT_CAPACITY = 4096;
+  static final int MAX_CAPACITY = 1 << 20;
+
+  private static final byte PHASE_BEGIN = 'B';
+  private static final byte PHASE_END = 'E';
+  private static final byte PHASE_INSTANT = 'i';
+
+  private volatile boolean enabled = false;
+
+  private long[] timestamps; //microseconds
+  private String[] names;
+  private byte[] phases;
+  private int[] threadIds;
+  private int mask;
+  private long written; //events recorded since enable(), including overwritten ones
+
+  // Starts recording into a fresh buffer of at least capacity events, rounded up to a power of two
+  public synchronized void enable(int capacity) {
+    int size = Integer.highestOneBit(Math.max(16, Math.min(capacity, MAX_CAPACITY)) - 1) << 1;
+    timestamps = new long[size];
+    names = new String[size];
+    phases = new byte[size];
+    threadIds = new int[size];
+    mask = size - 1;
+    written = 0;
+    enabled = true;
+  }
+
+  // Stops recording and frees the buffer
+  public synchronized void disable() {
+    enabled = false;
+    timestamps = null;
+    names = null;
+    phases = null;
+    threadIds = null;
+    written = 0;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void begin(String name) {
+    if (enabled) record(PHASE_BEGIN, name);
+  }
+
+  public void end(String name) {
+    if (enabled) record(PHASE_END, name);
+  }
+
+  public void instant(String name) {
+    if (enabled) record(PHASE_INSTANT, name);
+  }
+
+  private synchronized void record(byte phase, String name) {
+    if (!enabled) {
+      return;
+    }
+    int slot = (int) (written++ & mask);
+    timestamps[slot] = System.nanoTime() / 1000;
+    names[slot] = name;
+    phases[slot] = phase;
+    threadIds[slot] = Process.myTid();
+  }
+
+  // Writes the buffered events to file, oldest first, and returns how many were written
+  public synchronized int dump(File file) throws IOException {
+    if (timestamps == null) {
+      return 0;
+    }
+    final int size = mask + 1;
+    final long first = Math.max(0, written - size);
+    final int pid = Process.myPid();
+
+    File tmp = new File(file.getPath() + ".tmp");
+    FileOutputStream stream = new FileOutputStream(tmp);
+    Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+    int count = 0;
+    try {
+      out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+      out.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"args\":{\"name\":\"IDTechMSRAudio\"}}");
+      for (long i = first; i < written; i++) {
+        int slot = (int) (i & mask);
+        out.write(",\n{\"name\":\"");
+        out.write(names[slot]);
+        out.write("\",\"cat\":\"reader\",\"ph\":\"");
+        out.write((char) phases[slot]);
+        out.write("\",\"ts\":");
+        out.write(Long.toString(timestamps[slot]));
+        out.write(",\"pid\":");
+        out.write(Integer.toString(pid));
+        out.write(",\"tid\":");
+        out.write(Integer.toString(threadIds[slot]));
+        if (phases[slot] == PHASE_INSTANT) {
+          out.write(",\"s\":\"t\"");
+        }
+        out.write('}');
+        count++;
+      }
+      out.write("]}\n");
+      out.flush();
+      stream.getFD().sync();
+    } finally {
+      out.close();
+    }
+    if (!tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Failed to rename " + tmp + " to " + file);
+    }
+    return count;
+  }
+}
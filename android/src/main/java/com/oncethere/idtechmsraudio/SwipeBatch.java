@@ -0,0 +1,101 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Swipes handed to a SwipeSink in one call.
+ *
+ * The frames are packed back to back in capture format (each preceded by its length as a 32-bit
+ * little-endian integer, see SwipeCaptureReplay), so getData() can be written out as is. Instances
+ * are re-used by the exporter and wiped after the sink returns; sinks must copy what they keep.
+ */
+public final class SwipeBatch {
+  private byte[] data;
+  private int length = 0;
+  private int count = 0;
+  private final int[] offsets; //of each frame, after its length prefix
+  private final int[] lengths;
+  private final byte[] flags;
+  private final long[] seqs;
+  private final long[] receivedAts;
+
+  SwipeBatch(int capacity, int initialBytes) {
+    data = new byte[initialBytes];
+    offsets = new int[capacity];
+    lengths = new int[capacity];
+    flags = new byte[capacity];
+    seqs = new long[capacity];
+    receivedAts = new long[capacity];
+  }
+
+  // Adds the frame held in frame's remaining bytes, which are consumed
+  void add(byte flag, long seq, long receivedAt, ByteBuffer frame) {
+    final int frameLength = frame.remaining();
+    int needed = length + 4 + frameLength;
+    if (data.length < needed) {
+      byte[] grown = Arrays.copyOf(data, Math.max(needed, data.length * 2));
+      Arrays.fill(data, (byte) 0);
+      data = grown;
+    }
+    data[length] = (byte) frameLength;
+    data[length + 1] = (byte) (frameLength >>> 8);
+    data[length + 2] = (byte) (frameLength >>> 16);
+    data[length + 3] = (byte) (frameLength >>> 24);
+    frame.get(data, length + 4, frameLength);
+    offsets[count] = length + 4;
+    lengths[count] = frameLength;
+    flags[count] = flag;
+    seqs[count] = seq;
+    receivedAts[count] = receivedAt;
+    length = needed;
+    count++;
+  }
+
+  void clear() {
+    Arrays.fill(data, 0, length, (byte) 0);
+    length = 0;
+    count = 0;
+  }
+
+  boolean isFull() {
+    return count == offsets.length;
+  }
+
+  // Number of swipes
+  public int size() {
+    return count;
+  }
+
+  // All swipes in capture format, valid in [0, getLength())
+  public byte[] getData() {
+    return data;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  // Offset of swipe i's frame in getData()
+  public int offsetOf(int i) {
+    return offsets[i];
+  }
+
+  public int lengthOf(int i) {
+    return lengths[i];
+  }
+
+  public byte flagOf(int i) {
+    return flags[i];
+  }
+
+  // Journal sequence number, -1 if the swipe was not journaled
+  public long seqOf(int i) {
+    return seqs[i];
+  }
+
+  // System.nanoTime() when the swipe was received
+  public long receivedAtOf(int i) {
+    return receivedAts[i];
+  }
+}
@@ -0,0 +1,319 @@
+package com.oncethere.idtechmsraudio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses a capture file of recorded swipe frames in parallel.
+ *
+ * A capture is a sequence of records, each a frame preceded by its length as a 32-bit
+ * little-endian integer (see writeFrame()). The file is memory-mapped one chunk at a time and
+ * never copied onto the heap as a whole. Up to parallelism workers take the chunks one at a time,
+ * each with its own UmCardDataView and scratch buffer, and their counts are merged into one
+ * SwipeCaptureStats. Plain executor threads rather than a fork/join pool, which needs API 21.
+ *
+ * Optionally every frame also gets a fixed-size record in an output file, at
+ * RECORD_LENGTH * frame index, so workers can write their chunks independently:
+ *
+ *   0  long   offset of the frame in the capture
+ *   8  int    frame length
+ *   12 short  flags, see FLAG_*
+ *   14 byte   card type (0xFF if none)
+ *   15 byte   track status (0xFF if none)
+ *   16 byte[3] track 1, 2, 3 lengths
+ *   19 byte   reserved
+ *   20 byte[10] KSN, zero if absent
+ *   30 short  reserved
+ */
+public class SwipeCaptureReplay {
+  public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+  public static final int RECORD_LENGTH = 32;
+
+  public static final int FLAG_VALID = 1;
+  public static final int FLAG_ENCRYPTED = 1 << 1;
+  public static final int FLAG_AES = 1 << 2;
+  public static final int FLAG_TRACK1 = 1 << 3; //track 2 and 3 follow
+  public static final int FLAG_TRACK1_ENCRYPTED = 1 << 6; //encrypted track 2 and 3 follow
+  public static final int FLAG_SERIAL_NUMBER = 1 << 9;
+  public static final int FLAG_KSN = 1 << 10;
+
+  private static final int LENGTH_PREFIX = 4;
+  private static final int SCAN_WINDOW = 64 * 1024 * 1024;
+  private static final int RECORD_BATCH = 2048; //output records written per call
+
+  private final File capture;
+  private File output = null;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  public SwipeCaptureReplay(File capture) {
+    this.capture = capture;
+  }
+
+  // File to write one RECORD_LENGTH record per frame into, or null for counts only
+  public SwipeCaptureReplay setOutput(File output) {
+    this.output = output;
+    return this;
+  }
+
+  // Approximate number of capture bytes per parse task
+  public SwipeCaptureReplay setChunkSize(int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be positive");
+    }
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  public SwipeCaptureReplay setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  // Appends one frame to a capture
+  public static void writeFrame(OutputStream out, byte[] frame, int offset, int length) throws IOException {
+    out.write(length & 0xFF);
+    out.write((length >>> 8) & 0xFF);
+    out.write((length >>> 16) & 0xFF);
+    out.write((length >>> 24) & 0xFF);
+    out.write(frame, offset, length);
+  }
+
+  public SwipeCaptureStats run() throws IOException {
+    RandomAccessFile in = new RandomAccessFile(capture, "r");
+    RandomAccessFile out = null;
+    ExecutorService pool = null;
+    try {
+      FileChannel inChannel = in.getChannel();
+      Chunks chunks = split(inChannel);
+
+      FileChannel outChannel = null;
+      if (output != null) {
+        out = new RandomAccessFile(output, "rw");
+        out.setLength(chunks.frames * RECORD_LENGTH);
+        outChannel = out.getChannel();
+      }
+
+      SwipeCaptureStats stats;
+      if (chunks.count == 0) {
+        stats = new SwipeCaptureStats();
+      } else {
+        int workers = Math.min(parallelism, chunks.count);
+        pool = Executors.newFixedThreadPool(workers);
+        AtomicInteger nextChunk = new AtomicInteger();
+        List<Future<SwipeCaptureStats>> results = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+          results.add(pool.submit(new ParseTask(inChannel, outChannel, chunks, nextChunk)));
+        }
+        stats = new SwipeCaptureStats();
+        for (Future<SwipeCaptureStats> result : results) {
+          stats.merge(await(result));
+        }
+      }
+      stats.truncatedBytes = chunks.truncatedBytes;
+      return stats;
+    } finally {
+      if (pool != null) pool.shutdownNow();
+      if (out != null) out.close();
+      in.close();
+    }
+  }
+
+  // Walks the length prefixes once to find chunk boundaries. Only the prefixes are touched,
+  // and only one long triple per chunk is kept.
+  private Chunks split(FileChannel channel) throws IOException {
+    final long size = channel.size();
+    Chunks chunks = new Chunks();
+    MappedByteBuffer window = null;
+    long windowStart = 0;
+
+    long position = 0;
+    long chunkStart = 0;
+    long chunkFirstFrame = 0;
+    long frames = 0;
+    while (position + LENGTH_PREFIX <= size) {
+      if (window == null || position + LENGTH_PREFIX > windowStart + window.limit()) {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(SCAN_WINDOW, size - windowStart));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+      }
+      long length = window.getInt((int) (position - windowStart)) & 0xFFFFFFFFL;
+      if (length > UmFrameAssembler.MAX_FRAME_LENGTH || position + LENGTH_PREFIX + length > size) {
+        //corrupt or cut off record, nothing after it can be trusted
+        break;
+      }
+      position += LENGTH_PREFIX + length;
+      frames++;
+      if (position - chunkStart >= chunkSize) {
+        chunks.add(chunkStart, position, chunkFirstFrame);
+        chunkStart = position;
+        chunkFirstFrame = frames;
+      }
+    }
+    if (position > chunkStart) {
+      chunks.add(chunkStart, position, chunkFirstFrame);
+    }
+    chunks.frames = frames;
+    chunks.truncatedBytes = size - position;
+    return chunks;
+  }
+
+  private static final class Chunks {
+    long[] starts = new long[16];
+    long[] ends = new long[16];
+    long[] firstFrames = new long[16];
+    int count = 0;
+    long frames = 0;
+    long truncatedBytes = 0;
+
+    void add(long start, long end, long firstFrame) {
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+        firstFrames = Arrays.copyOf(firstFrames, count * 2);
+      }
+      starts[count] = start;
+      ends[count] = end;
+      firstFrames[count] = firstFrame;
+      count++;
+    }
+  }
+
+  // Per worker thread parse state
+  private static final class Worker {
+    final UmCardDataView view = new UmCardDataView();
+    final byte[] frame = new byte[UmFrameAssembler.MAX_FRAME_LENGTH];
+    final ByteBuffer records = ByteBuffer.allocateDirect(RECORD_BATCH * RECORD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  // Result of a ParseTask, with its failure rethrown as thrown by the task
+  private static SwipeCaptureStats await(Future<SwipeCaptureStats> result) throws IOException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("capture replay interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  // Parses chunks until none are left, counting them into its own stats
+  private static final class ParseTask implements Callable<SwipeCaptureStats> {
+    private final FileChannel in;
+    private final FileChannel out;
+    private final Chunks chunks;
+    private final AtomicInteger nextChunk;
+    private final Worker worker = new Worker();
+
+    ParseTask(FileChannel in, FileChannel out, Chunks chunks, AtomicInteger nextChunk) {
+      this.in = in;
+      this.out = out;
+      this.chunks = chunks;
+      this.nextChunk = nextChunk;
+    }
+
+    @Override
+    public SwipeCaptureStats call() throws IOException {
+      final SwipeCaptureStats stats = new SwipeCaptureStats();
+      for (int chunk = nextChunk.getAndIncrement(); chunk < chunks.count; chunk = nextChunk.getAndIncrement()) {
+        parseChunk(chunk, stats);
+      }
+      return stats;
+    }
+
+    private void parseChunk(int chunk, SwipeCaptureStats stats) throws IOException {
+      final long start = chunks.starts[chunk];
+      final long end = chunks.ends[chunk];
+      final long firstFrame = chunks.firstFrames[chunk];
+
+      MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      data.order(ByteOrder.LITTLE_ENDIAN);
+
+      final ByteBuffer records = worker.records;
+      records.clear();
+      long outPosition = firstFrame * RECORD_LENGTH;
+
+      while (data.hasRemaining()) {
+        final long frameOffset = start + data.position() + LENGTH_PREFIX;
+        final int length = data.getInt();
+        data.get(worker.frame, 0, length);
+        worker.view.parse(worker.frame, 0, length);
+        stats.add(worker.view);
+        if (out != null) {
+          putRecord(records, worker.view, frameOffset, length);
+          if (!records.hasRemaining()) {
+            outPosition = writeRecords(records, outPosition);
+          }
+        }
+      }
+      if (out != null) {
+        writeRecords(records, outPosition);
+      }
+    }
+
+    // Writes the batched records at position and returns the position after them
+    private long writeRecords(ByteBuffer records, long position) throws IOException {
+      records.flip();
+      while (records.hasRemaining()) {
+        position += out.write(records, position);
+      }
+      records.clear();
+      return position;
+    }
+  }
+
+  private static void putRecord(ByteBuffer records, UmCardDataView view, long frameOffset, int frameLength) {
+    int flags = 0;
+    if (view.isValid()) flags |= FLAG_VALID;
+    if (view.isEncrypted()) flags |= FLAG_ENCRYPTED;
+    if (view.isAesEncrypted()) flags |= FLAG_AES;
+    for (int i = 0; i < 3; i++) {
+      if (view.hasField(UmCardDataView.TRACK1 + i)) flags |= FLAG_TRACK1 << i;
+      if (view.hasField(UmCardDataView.TRACK1_ENCRYPTED + i)) flags |= FLAG_TRACK1_ENCRYPTED << i;
+    }
+    if (view.hasField(UmCardDataView.SERIAL_NUMBER)) flags |= FLAG_SERIAL_NUMBER;
+    if (view.hasField(UmCardDataView.KSN)) flags |= FLAG_KSN;
+
+    records.putLong(frameOffset);
+    records.putInt(frameLength);
+    records.putShort((short) flags);
+    records.put((byte) view.getCardType());
+    records.put((byte) view.getTrackStatus());
+    for (int i = 0; i < 3; i++) {
+      records.put((byte) view.lengthOf(UmCardDataView.TRACK1 + i));
+    }
+    records.put((byte) 0);
+    if (view.hasField(UmCardDataView.KSN)) {
+      records.put(view.getByteData(), view.offsetOf(UmCardDataView.KSN), UmCardDataView.KSN_LENGTH);
+    } else {
+      for (int i = 0; i < UmCardDataView.KSN_LENGTH; i++) {
+        records.put((byte) 0);
+      }
+    }
+    records.putShort((short) 0);
+  }
+}
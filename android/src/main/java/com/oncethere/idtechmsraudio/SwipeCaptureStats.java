@@ -0,0 +1,98 @@
+package com.oncethere.idtechmsraudio;
+
+// Aggregate counts over a set of parsed swipe frames. Not thread-safe; merge() per-thread instances instead.
+public class SwipeCaptureStats {
+  public long frames;
+  public long valid;
+  public long invalid;
+  public long encrypted;
+  public long aes; //valid AES encrypted frames
+  public long tdes; //valid TDES encrypted frames
+  public long unencrypted;
+  public long serialNumber; //valid frames with a serial number
+  public long ksn; //valid frames with a KSN
+  public final long[] tracks = new long[3]; //valid frames with track 1, 2, 3
+  public final long[] encryptedTracks = new long[3]; //valid frames with encrypted track 1, 2, 3
+  public long pan; //valid frames with a PAN
+  public long maskedPan; //of those, masked ones
+  public long luhnFailures; //of those, unmasked ones failing the Luhn check
+  public long truncatedBytes; //trailing capture bytes that do not hold a complete record
+
+  private final UmTrackFields trackFields = new UmTrackFields();
+
+  public void add(UmCardDataView view) {
+    frames++;
+    if (view.isEncrypted()) {
+      encrypted++;
+    } else {
+      unencrypted++;
+    }
+    if (!view.isValid()) {
+      invalid++;
+      return;
+    }
+
+    valid++;
+    if (view.isEncrypted()) {
+      if (view.isAesEncrypted()) {
+        aes++;
+      } else {
+        tdes++;
+      }
+    }
+    for (int i = 0; i < 3; i++) {
+      if (view.hasField(UmCardDataView.TRACK1 + i)) tracks[i]++;
+      if (view.hasField(UmCardDataView.TRACK1_ENCRYPTED + i)) encryptedTracks[i]++;
+    }
+    if (view.hasField(UmCardDataView.SERIAL_NUMBER)) serialNumber++;
+    if (view.hasField(UmCardDataView.KSN)) ksn++;
+    if (trackFields.extract(view)) {
+      pan++;
+      if (trackFields.isPanMasked()) {
+        maskedPan++;
+      } else if (!trackFields.isPanValid()) {
+        luhnFailures++;
+      }
+    }
+  }
+
+  public SwipeCaptureStats merge(SwipeCaptureStats other) {
+    frames += other.frames;
+    valid += other.valid;
+    invalid += other.invalid;
+    encrypted += other.encrypted;
+    aes += other.aes;
+    tdes += other.tdes;
+    unencrypted += other.unencrypted;
+    serialNumber += other.serialNumber;
+    ksn += other.ksn;
+    for (int i = 0; i < 3; i++) {
+      tracks[i] += other.tracks[i];
+      encryptedTracks[i] += other.encryptedTracks[i];
+    }
+    pan += other.pan;
+    maskedPan += other.maskedPan;
+    luhnFailures += other.luhnFailures;
+    truncatedBytes += other.truncatedBytes;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "frames=" + frames
+      + " valid=" + valid
+      + " invalid=" + invalid
+      + " encrypted=" + encrypted
+      + " aes=" + aes
+      + " tdes=" + tdes
+      + " unencrypted=" + unencrypted
+      + " tracks=" + tracks[0] + "/" + tracks[1] + "/" + tracks[2]
+      + " encryptedTracks=" + encryptedTracks[0] + "/" + encryptedTracks[1] + "/" + encryptedTracks[2]
+      + " serialNumber=" + serialNumber
+      + " ksn=" + ksn
+      + " pan=" + pan
+      + " maskedPan=" + maskedPan
+      + " luhnFailures=" + luhnFailures
+      + " truncatedBytes=" + truncatedBytes;
+  }
+}
@@ -0,0 +1,50 @@
+package com.oncethere.idtechmsraudio;
+
+import java.util.Arrays;
+
+/**
+ * A swipe travelling through the SwipePipeline.
+ *
+ * Instances belong to the pipeline and are re-used for later swipes once the last stage returns,
+ * so stages must not keep references to them or to frame.
+ */
+public class SwipeContext {
+  // Pipeline owned copy of the frame SDK delivered, valid in [0, length)
+  public byte[] frame = new byte[512];
+  public int length;
+  public byte flag; //flagOfCardData from onReceiveMsgCardData
+  public long receivedAt; //System.nanoTime() when the swipe was queued
+
+  // Filled by the parse stage
+  public final UmCardDataView view = new UmCardDataView();
+  public boolean parsed;
+  // Set by the dedupe stage when the same card data was seen within options.dedupeWindowMs
+  public boolean duplicate;
+  // Journal sequence number set by the journal stage, -1 if the swipe was not journaled
+  public long seq = -1;
+
+  void set(byte flag, byte[] cardData) {
+    length = cardData == null ? 0 : cardData.length;
+    if (frame.length < length) {
+      frame = new byte[Math.max(length, frame.length * 2)];
+    }
+    if (length > 0) {
+      System.arraycopy(cardData, 0, frame, 0, length);
+    }
+    this.flag = flag;
+    this.receivedAt = System.nanoTime();
+    parsed = false;
+    duplicate = false;
+    seq = -1;
+  }
+
+  // Clears the frame so card data does not linger in the pool
+  void clear() {
+    Arrays.fill(frame, 0, length, (byte) 0);
+    length = 0;
+    view.parse(null);
+    parsed = false;
+    duplicate = false;
+    seq = -1;
+  }
+}
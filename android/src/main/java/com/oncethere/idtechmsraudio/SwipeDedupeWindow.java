@@ -0,0 +1,107 @@
+package com.oncethere.idtechmsraudio;
+
+import java.util.Arrays;
+
+/**
+ * Recently seen swipes, as 64-bit hashes in a fixed-size ring, for spotting a reader delivering
+ * the same card data twice.
+ *
+ * Encrypted frames are identified by their KSN and encrypted tracks, everything else by the
+ * whole frame. A swipe is a duplicate if the same hash was recorded less than windowNanos before
+ * it; duplicates are not recorded again, so the window runs from the first delivery. The ring
+ * holds the last `capacity` distinct swipes, so memory use does not grow with the swipe count.
+ * Not thread safe; the dedupe stage only uses it from the pipeline worker.
+ */
+public class SwipeDedupeWindow {
+  public static final int DEFAULT_CAPACITY = 32;
+
+  private static final long M1 = 0x87C37B91114253D5L;
+  private static final long M2 = 0x4CF5AD432745937FL;
+  private static final int[] HASHED_FIELDS = {
+    UmCardDataView.KSN,
+    UmCardDataView.TRACK1_ENCRYPTED,
+    UmCardDataView.TRACK2_ENCRYPTED,
+    UmCardDataView.TRACK3_ENCRYPTED,
+  };
+
+  private final long[] hashes;
+  private final long[] seenAt; //nanoTime, 0 for an empty slot
+  private int next = 0;
+
+  public SwipeDedupeWindow() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public SwipeDedupeWindow(int capacity) {
+    hashes = new long[Math.max(1, capacity)];
+    seenAt = new long[hashes.length];
+  }
+
+  // Records the swipe unless it is a duplicate. Returns whether it was one.
+  public boolean isDuplicate(long hash, long now, long windowNanos) {
+    for (int i = 0; i < hashes.length; i++) {
+      if (hashes[i] == hash && seenAt[i] != 0 && now - seenAt[i] < windowNanos) {
+        return true;
+      }
+    }
+    hashes[next] = hash;
+    seenAt[next] = now | 1;
+    next = (next + 1) % hashes.length;
+    return false;
+  }
+
+  public void clear() {
+    Arrays.fill(hashes, 0);
+    Arrays.fill(seenAt, 0);
+    next = 0;
+  }
+
+  // Hash identifying the swipe; see the class comment. view must be parsed from frame.
+  public static long hashOf(UmCardDataView view, byte[] frame, int length) {
+    if (!view.isEncrypted() || !view.hasField(UmCardDataView.KSN)) {
+      return hash(frame, 0, length, 0);
+    }
+    long h = 0;
+    for (int field : HASHED_FIELDS) {
+      if (view.hasField(field)) {
+        h = hash(frame, view.offsetOf(field), view.lengthOf(field), h);
+      }
+    }
+    return h;
+  }
+
+  // 64-bit hash of bytes[offset, offset + length) continuing from seed. Takes 8 bytes per
+  // multiply, with the MurmurHash3 mixing steps; not meant to resist crafted collisions.
+  static long hash(byte[] bytes, int offset, int length, long seed) {
+    long h = seed ^ length;
+    final int end = offset + length;
+    int i = offset;
+    for (; i + 8 <= end; i += 8) {
+      long k = (bytes[i] & 0xFFL)
+        | (bytes[i + 1] & 0xFFL) << 8
+        | (bytes[i + 2] & 0xFFL) << 16
+        | (bytes[i + 3] & 0xFFL) << 24
+        | (bytes[i + 4] & 0xFFL) << 32
+        | (bytes[i + 5] & 0xFFL) << 40
+        | (bytes[i + 6] & 0xFFL) << 48
+        | (bytes[i + 7] & 0xFFL) << 56;
+      h ^= Long.rotateLeft(k * M1, 31) * M2;
+      h = Long.rotateLeft(h, 27) * 5 + 0x52DCE729;
+    }
+    long k = 0;
+    for (int shift = 0; i < end; i++, shift += 8) {
+      k |= (bytes[i] & 0xFFL) << shift;
+    }
+    h ^= Long.rotateLeft(k * M1, 31) * M2;
+    return fmix(h);
+  }
+
+  private static long fmix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,131 @@
+package com.oncethere.idtechmsraudio;
+
+// Builds the bridge events that carry card data.
+public final class SwipeEvents {
+  private static final ThreadLocal<UmTrackFields> TRACK_FIELDS = new ThreadLocal<UmTrackFields>() {
+    @Override
+    protected UmTrackFields initialValue() {
+      return new UmTrackFields();
+    }
+  };
+
+  private SwipeEvents() {}
+
+  public static void writeCardData(byte[] cardData, EventPayload result) {
+    writeCardData(cardData, 0, cardData.length, PayloadEncoder.HEX, result);
+  }
+
+  // data is encoded with encoding, see PayloadEncoder
+  public static void writeCardData(byte[] cardData, int offset, int length, String encoding, EventPayload result) {
+    result.putString("originalType", "umSwipe_receivedSwipe");
+    result.putString("type", "swipe_received");
+    result.putString("message", "Successful card swipe");
+    result.putString("encoding", encoding);
+    result.putString("data", PayloadEncoder.encode(encoding, cardData, offset, length));
+  }
+
+  // Structured variant of writeCardData. Field names match parseSwipeData() in src/universal/parse.js,
+  // so JS gets the parsed swipe without decoding and re-parsing the frame.
+  // The raw frame is only included when includeRawData is set, encoded with encoding. The fields are always
+  // lower-case hex, as parse.js produces them.
+  public static void writeParsedCardData(UmCardDataView view, boolean includeRawData, EventPayload result) {
+    writeParsedCardData(view, includeRawData, PayloadEncoder.HEX, result);
+  }
+
+  public static void writeParsedCardData(UmCardDataView view, boolean includeRawData, String encoding, EventPayload result) {
+    result.putString("originalType", "umSwipe_receivedSwipe");
+    result.putString("type", "swipe_received");
+    result.putString("message", view.isValid() ? "Successful card swipe" : "Invalid card swipe");
+    result.putBoolean("parsed", true);
+    result.putBoolean("valid", view.isValid());
+    result.putBoolean("encrypted", view.isEncrypted());
+    result.putStringArray("tracks", new String[] {
+      fieldToHex(view, UmCardDataView.TRACK1),
+      fieldToHex(view, UmCardDataView.TRACK2),
+      fieldToHex(view, UmCardDataView.TRACK3),
+    });
+    if (view.isEncrypted()) {
+      result.putBoolean("aes", view.isAesEncrypted());
+      putIntOrNull(result, "card_type", view.getCardType());
+      putIntOrNull(result, "track_status", view.getTrackStatus());
+      result.putStringArray("encryptedTracks", new String[] {
+        fieldToHex(view, UmCardDataView.TRACK1_ENCRYPTED),
+        fieldToHex(view, UmCardDataView.TRACK2_ENCRYPTED),
+        fieldToHex(view, UmCardDataView.TRACK3_ENCRYPTED),
+      });
+      putStringOrNull(result, "ksn", fieldToHex(view, UmCardDataView.KSN));
+      putStringOrNull(result, "serial", fieldToHex(view, UmCardDataView.SERIAL_NUMBER));
+    } else {
+      writeUnencryptedHeader(view, result);
+    }
+    writeTrackFields(view, result);
+    if (includeRawData) {
+      result.putString("encoding", encoding);
+      result.putString("data", PayloadEncoder.encode(encoding, view.getByteData(), view.getFrameOffset(), view.getFrameLength()));
+    }
+  }
+
+  // What parseUnencryptedSwipeData() adds to the tracks. It reads card_type and track_status from
+  // bytes 3 and 4 whatever they hold, and leaves them out of shorter frames. The sentinel of the
+  // last track goes in trackType, parse.js calls it type; parseSwipeEvent() renames it.
+  private static void writeUnencryptedHeader(UmCardDataView view, EventPayload result) {
+    final byte[] data = view.getByteData();
+    final int base = view.getFrameOffset();
+    if (view.getFrameLength() > 3) {
+      result.putInt("card_type", data[base + 3] & 0xFF);
+    }
+    if (view.getFrameLength() > 4) {
+      result.putInt("track_status", data[base + 4] & 0xFF);
+    }
+    String trackType = null;
+    for (int field = UmCardDataView.TRACK3; field >= UmCardDataView.TRACK1 && trackType == null; field--) {
+      if (view.hasField(field)) {
+        byte sentinel = data[view.offsetOf(field)];
+        trackType = sentinel == '%' ? "ISO1" : (sentinel == ';' ? "ISO2" : "JIS");
+      }
+    }
+    result.putBoolean("iso", trackType != null && !"JIS".equals(trackType));
+    if (trackType != null) {
+      result.putString("trackType", trackType);
+    }
+  }
+
+  // PAN, name, expiry (YYMM) and service code as plain strings, null if absent
+  static void writeTrackFields(UmCardDataView view, EventPayload result) {
+    UmTrackFields fields = TRACK_FIELDS.get();
+    fields.extract(view);
+    byte[] data = view.getByteData();
+    putStringOrNull(result, "pan", ascii(data, fields.getPanOffset(), fields.getPanLength()));
+    result.putBoolean("panMasked", fields.isPanMasked());
+    result.putBoolean("panValid", fields.isPanValid());
+    putStringOrNull(result, "name", ascii(data, fields.getNameOffset(), fields.getNameLength()));
+    putStringOrNull(result, "expiry", ascii(data, fields.getExpiryOffset(), 4));
+    putStringOrNull(result, "serviceCode", ascii(data, fields.getServiceCodeOffset(), 3));
+  }
+
+  private static String ascii(byte[] data, int offset, int length) {
+    if (offset < 0) return null;
+    return PayloadEncoder.bytesToLatin1(data, offset, length);
+  }
+
+  static String fieldToHex(UmCardDataView view, int field) {
+    if (!view.hasField(field)) return null;
+    return PayloadEncoder.bytesToLowerHex(view.getByteData(), view.offsetOf(field), view.lengthOf(field));
+  }
+
+  private static void putIntOrNull(EventPayload result, String key, int value) {
+    if (value < 0) {
+      result.putNull(key);
+    } else {
+      result.putInt(key, value);
+    }
+  }
+
+  private static void putStringOrNull(EventPayload result, String key, String value) {
+    if (value == null) {
+      result.putNull(key);
+    } else {
+      result.putString(key, value);
+    }
+  }
+}
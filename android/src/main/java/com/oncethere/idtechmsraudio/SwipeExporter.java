@@ -0,0 +1,305 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Swipe stage that hands swipes to a SwipeSink in batches, on a worker of its own.
+ *
+ * Swipes are copied into a bounded queue, each into a CardDataBufferPool buffer that is wiped and
+ * given back once the swipe is in a batch or dropped. The worker takes a batch once batchSize
+ * swipes are queued or the oldest one was received maxBatchAgeMs ago, whichever comes first, so
+ * the sink's per-call overhead is paid once per batch. When the queue is full, the
+ * overflow policy either blocks the pipeline worker for up to blockTimeoutMs, which backs the
+ * swipe pipeline up in turn, or drops the newest or oldest swipe. Register it with
+ * IDTechMSRAudioModule.addSwipeStage() after start().
+ *
+ * By default only encrypted frames are exported. A batch the sink fails is not retried; with the
+ * journal option, its swipes stay journaled until acknowledged.
+ */
+public class SwipeExporter implements SwipeStage {
+  public enum Overflow {
+    BLOCK, DROP_NEWEST, DROP_OLDEST;
+
+    // Name as set from JS, e.g. dropOldest
+    public String label() {
+      String[] words = name().toLowerCase().split("_");
+      StringBuilder label = new StringBuilder(words[0]);
+      for (int i = 1; i < words.length; i++) {
+        label.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
+      }
+      return label.toString();
+    }
+
+    // null if there is no such policy
+    public static Overflow fromLabel(String label) {
+      for (Overflow overflow : values()) {
+        if (overflow.label().equals(label)) {
+          return overflow;
+        }
+      }
+      return null;
+    }
+  }
+
+  public static final int DEFAULT_QUEUE_SIZE = 256;
+  public static final int DEFAULT_BATCH_SIZE = 32;
+  public static final int DEFAULT_BATCH_AGE_MS = 1000;
+  public static final int DEFAULT_BLOCK_TIMEOUT_MS = 100;
+
+  private static final class Record {
+    ByteBuffer frame; //from pool, null while the record is free
+    byte flag;
+    long seq;
+    long receivedAt;
+  }
+
+  private final String name;
+  private final SwipeSink sink;
+  private final CardDataBufferPool pool;
+  private final Record[] queue;
+  private int head = 0; //guarded by this, like count and running
+  private int count = 0;
+  private boolean running = false;
+  private Thread worker = null;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private long maxBatchAgeNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BATCH_AGE_MS);
+  private Overflow overflow = Overflow.DROP_OLDEST;
+  private long blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BLOCK_TIMEOUT_MS);
+  private boolean encryptedOnly = true;
+  private SwipeBatch batch = null; //worker only
+
+  private final AtomicLong exported = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong(); //by the overflow policy or after stop()
+  private final AtomicLong failed = new AtomicLong(); //in batches the sink threw on
+
+  public SwipeExporter(String name, SwipeSink sink) {
+    this(name, sink, DEFAULT_QUEUE_SIZE);
+  }
+
+  public SwipeExporter(String name, SwipeSink sink, int queueSize) {
+    this(name, sink, queueSize, new CardDataBufferPool(CardDataBufferPool.DEFAULT_BUFFER_SIZE, queueSize, false));
+  }
+
+  // Queued swipes are held in buffers from pool
+  public SwipeExporter(String name, SwipeSink sink, int queueSize, CardDataBufferPool pool) {
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("queueSize must be positive");
+    }
+    this.name = name;
+    this.sink = sink;
+    this.pool = pool;
+    this.queue = new Record[queueSize];
+    for (int i = 0; i < queueSize; i++) {
+      queue[i] = new Record();
+    }
+  }
+
+  // The setters take effect at start()
+  public SwipeExporter setBatching(int batchSize, int maxBatchAgeMs) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    this.batchSize = batchSize;
+    this.maxBatchAgeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxBatchAgeMs));
+    return this;
+  }
+
+  // blockTimeoutMs only applies to BLOCK
+  public SwipeExporter setOverflow(Overflow overflow, int blockTimeoutMs) {
+    this.overflow = overflow;
+    this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, blockTimeoutMs));
+    return this;
+  }
+
+  // Also export unencrypted frames. Put the exporter after SwipeStages.MaskStage to export them masked.
+  public SwipeExporter setEncryptedOnly(boolean encryptedOnly) {
+    this.encryptedOnly = encryptedOnly;
+    return this;
+  }
+
+  public synchronized SwipeExporter start() {
+    if (running || worker != null) {
+      return this;
+    }
+    batch = new SwipeBatch(batchSize, 512 * Math.min(batchSize, 64));
+    running = true;
+    worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, name);
+    worker.setDaemon(true);
+    worker.start();
+    return this;
+  }
+
+  // Stops taking swipes and returns right away. The worker still delivers the queued ones, then
+  // closes the sink.
+  public synchronized void stop() {
+    running = false;
+    notifyAll();
+  }
+
+  // stop(), then waits up to timeoutMs for the worker to finish; returns whether it did
+  public boolean stop(long timeoutMs) {
+    Thread worker;
+    synchronized (this) {
+      stop();
+      worker = this.worker;
+    }
+    if (worker == null) {
+      return true;
+    }
+    try {
+      worker.join(timeoutMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return !worker.isAlive();
+  }
+
+  @Override
+  public boolean process(SwipeContext swipe) {
+    if (swipe.duplicate || (encryptedOnly && !(swipe.parsed && swipe.view.isEncrypted()))) {
+      return true;
+    }
+    offer(swipe.flag, swipe.seq, swipe.receivedAt, swipe.frame, 0, swipe.length);
+    //never holds the swipe back from later stages
+    return true;
+  }
+
+  // Queues a copy of frame[offset, offset + length). Returns false if it was dropped.
+  public synchronized boolean offer(byte flag, long seq, long receivedAt, byte[] frame, int offset, int length) {
+    if (count == queue.length && running) {
+      switch (overflow) {
+        case BLOCK:
+          long deadline = System.nanoTime() + blockTimeoutNanos;
+          while (count == queue.length && running) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !await(left)) {
+              break;
+            }
+          }
+          break;
+        case DROP_OLDEST:
+          wipe(queue[head]);
+          head = (head + 1) % queue.length;
+          count--;
+          dropped.incrementAndGet();
+          break;
+        default:
+          break;
+      }
+    }
+    if (count == queue.length || !running) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    Record record = queue[(head + count) % queue.length];
+    record.frame = pool.acquire(length);
+    record.frame.put(frame, offset, length);
+    record.frame.flip();
+    record.flag = flag;
+    record.seq = seq;
+    record.receivedAt = receivedAt;
+    count++;
+    if (count == 1 || count == batchSize) {
+      notifyAll();
+    }
+    return true;
+  }
+
+  // Waits on this for up to nanos. Returns false if interrupted.
+  private boolean await(long nanos) {
+    try {
+      TimeUnit.NANOSECONDS.timedWait(this, nanos);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void drain() {
+    for (;;) {
+      synchronized (this) {
+        for (;;) {
+          if (count >= batchSize || (!running && count > 0)) {
+            break;
+          }
+          if (!running) {
+            closeSink();
+            return;
+          }
+          if (count == 0) {
+            await(Long.MAX_VALUE);
+            continue;
+          }
+          long left = queue[head].receivedAt + maxBatchAgeNanos - System.nanoTime();
+          if (left <= 0) {
+            break;
+          }
+          await(left);
+        }
+        while (count > 0 && !batch.isFull()) {
+          Record record = queue[head];
+          batch.add(record.flag, record.seq, record.receivedAt, record.frame);
+          wipe(record);
+          head = (head + 1) % queue.length;
+          count--;
+        }
+        //room for a blocked producer
+        notifyAll();
+      }
+      deliver();
+    }
+  }
+
+  private void deliver() {
+    try {
+      sink.write(batch);
+      exported.addAndGet(batch.size());
+    } catch (Exception e) {
+      //one bad batch or sink must not take the worker down
+      e.printStackTrace();
+      failed.addAndGet(batch.size());
+    } finally {
+      batch.clear();
+    }
+  }
+
+  private void closeSink() {
+    try {
+      sink.close();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  // Zero-fills the record's buffer and gives it back to the pool
+  private void wipe(Record record) {
+    pool.release(record.frame);
+    record.frame = null;
+  }
+
+  // Swipes queued and not taken into a batch yet
+  public synchronized int getQueued() {
+    return count;
+  }
+
+  public long getExported() {
+    return exported.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+}
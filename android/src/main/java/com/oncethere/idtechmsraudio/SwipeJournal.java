@@ -0,0 +1,301 @@
+package com.oncethere.idtechmsraudio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of swipes not yet delivered, so they survive the app being killed.
+ *
+ * The file is a ring of fixed-size segments, each memory-mapped. Appending is a few puts into the
+ * mapping, without a system call; the OS writes the pages back, so a record is safe from the
+ * process dying as soon as append() returns, and from power loss after sync(). Records are
+ * acknowledged in place, and a segment whose records are all acknowledged is wiped and reused.
+ * When the next segment still holds unacknowledged records the journal is full and appends fail.
+ *
+ * Segment: long sequence number the segment was started at (0 if unused), then records. Little endian.
+ *
+ *   0  int    RECORD_MAGIC, written last
+ *   4  int    frame length
+ *   8  long   sequence number, increasing across segments and restarts
+ *   16 byte   flagOfCardData
+ *   17 byte   1 once acknowledged
+ *   18 short  reserved
+ *   20 byte[] frame
+ *   .. int    CRC32 of length, sequence number, flag and frame
+ *
+ * A zero int follows the last record. Scanning a segment stops at the first record that does not
+ * check out, so a record torn by a crash mid-append is ignored.
+ */
+public class SwipeJournal {
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+  public static final int DEFAULT_SEGMENTS = 4;
+
+  // Receives unacknowledged records. frame is scratch space, valid during the call only.
+  // Must not call back into the journal.
+  public interface Visitor {
+    void visit(long seq, byte flag, byte[] frame, int length);
+  }
+
+  static final int RECORD_MAGIC = 0x524A5753; //"SWJR"
+  static final int SEGMENT_HEADER = 8;
+  static final int RECORD_HEADER = 20;
+  static final int RECORD_OVERHEAD = RECORD_HEADER + 4;
+  private static final int ACK_OFFSET = 17;
+  private static final byte[] ZEROS = new byte[4096];
+
+  private final int segmentSize;
+  private final MappedByteBuffer[] segments;
+  private final int[] ends; //offset after the last record
+  private final int[] dirty; //offset up to which the segment may hold non-zero bytes
+  private final long[] firstSeqs; //-1 if the segment has no records
+  private final long[] lastSeqs;
+  private final int[] unacknowledged;
+  private int current = 0;
+  private long nextSeq = 1;
+
+  private final CRC32 crc = new CRC32();
+  private final byte[] header = new byte[13];
+  private final byte[] scratch;
+
+  public SwipeJournal(File file) throws IOException {
+    this(file, DEFAULT_SEGMENTS, DEFAULT_SEGMENT_SIZE);
+  }
+
+  // Opens the journal, creating or growing the file as needed, and scans what is in it
+  public SwipeJournal(File file, int segmentCount, int segmentSize) throws IOException {
+    if (segmentCount < 1 || segmentSize < SEGMENT_HEADER + RECORD_OVERHEAD + 4) {
+      throw new IllegalArgumentException("journal too small");
+    }
+    this.segmentSize = segmentSize;
+    segments = new MappedByteBuffer[segmentCount];
+    ends = new int[segmentCount];
+    dirty = new int[segmentCount];
+    firstSeqs = new long[segmentCount];
+    lastSeqs = new long[segmentCount];
+    unacknowledged = new int[segmentCount];
+    scratch = new byte[segmentSize];
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      long length = (long) segmentCount * segmentSize;
+      if (raf.length() < length) {
+        raf.setLength(length);
+      }
+      FileChannel channel = raf.getChannel();
+      for (int i = 0; i < segmentCount; i++) {
+        segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize);
+        segments[i].order(ByteOrder.LITTLE_ENDIAN);
+      }
+    } finally {
+      //the mappings stay valid
+      raf.close();
+    }
+
+    long newestSeq = 0;
+    long newestStart = 0;
+    for (int i = 0; i < segmentCount; i++) {
+      scan(i);
+      long start = segments[i].getLong(0);
+      nextSeq = Math.max(nextSeq, Math.max(lastSeqs[i] + 1, start));
+      //continue in the segment with the newest record, or the one started last if none has any
+      if (lastSeqs[i] > newestSeq || (newestSeq == 0 && start > newestStart)) {
+        current = i;
+        newestSeq = Math.max(newestSeq, lastSeqs[i]);
+        newestStart = start;
+      }
+    }
+    if (segments[current].getLong(0) == 0) {
+      segments[current].putLong(0, nextSeq);
+    }
+    Arrays.fill(scratch, (byte) 0);
+  }
+
+  private void scan(int segment) {
+    MappedByteBuffer buffer = segments[segment];
+    long start = buffer.getLong(0);
+    int pos = SEGMENT_HEADER;
+    firstSeqs[segment] = -1;
+    lastSeqs[segment] = -1;
+    unacknowledged[segment] = 0;
+    while (pos + RECORD_OVERHEAD <= segmentSize && buffer.getInt(pos) == RECORD_MAGIC) {
+      int length = buffer.getInt(pos + 4);
+      long seq = buffer.getLong(pos + 8);
+      if (length < 0 || length > segmentSize - pos - RECORD_OVERHEAD
+          || seq < start || seq <= lastSeqs[segment]
+          || buffer.getInt(pos + RECORD_HEADER + length) != crcOf(buffer, pos, length)) {
+        break;
+      }
+      if (firstSeqs[segment] < 0) {
+        firstSeqs[segment] = seq;
+      }
+      lastSeqs[segment] = seq;
+      if (buffer.get(pos + ACK_OFFSET) == 0) {
+        unacknowledged[segment]++;
+      }
+      pos += RECORD_OVERHEAD + length;
+    }
+    ends[segment] = pos;
+    //whatever a crash left behind the last record is unknown
+    dirty[segment] = segmentSize;
+  }
+
+  // CRC of the record at pos, read back from the mapping
+  private int crcOf(MappedByteBuffer buffer, int pos, int length) {
+    buffer.position(pos + 4);
+    buffer.get(header, 0, header.length);
+    buffer.position(pos + RECORD_HEADER);
+    buffer.get(scratch, 0, length);
+    crc.reset();
+    crc.update(header, 0, header.length);
+    crc.update(scratch, 0, length);
+    return (int) crc.getValue();
+  }
+
+  // Appends frame[offset, offset + length). Returns its sequence number, or -1 if the journal is full.
+  public synchronized long append(byte flag, byte[] frame, int offset, int length) {
+    final int total = RECORD_OVERHEAD + length;
+    if (total > segmentSize - SEGMENT_HEADER - 4) {
+      return -1;
+    }
+    if (ends[current] + total + 4 > segmentSize) {
+      int next = (current + 1) % segments.length;
+      if (unacknowledged[next] > 0) {
+        return -1;
+      }
+      wipe(next, nextSeq);
+      current = next;
+    }
+    final MappedByteBuffer buffer = segments[current];
+    final int pos = ends[current];
+    final long seq = nextSeq;
+
+    buffer.putInt(pos + total, 0);
+    writeHeader(length, seq, flag);
+    buffer.position(pos + 4);
+    buffer.put(header, 0, header.length);
+    buffer.put((byte) 0);
+    buffer.putShort((short) 0);
+    buffer.put(frame, offset, length);
+    crc.reset();
+    crc.update(header, 0, header.length);
+    crc.update(frame, offset, length);
+    buffer.putInt((int) crc.getValue());
+    //only now does the record count
+    buffer.putInt(pos, RECORD_MAGIC);
+
+    if (firstSeqs[current] < 0) {
+      firstSeqs[current] = seq;
+    }
+    lastSeqs[current] = seq;
+    unacknowledged[current]++;
+    ends[current] = pos + total;
+    dirty[current] = Math.max(dirty[current], pos + total + 4);
+    nextSeq++;
+    return seq;
+  }
+
+  private void writeHeader(int length, long seq, byte flag) {
+    for (int i = 0; i < 4; i++) {
+      header[i] = (byte) (length >>> (i * 8));
+    }
+    for (int i = 0; i < 8; i++) {
+      header[4 + i] = (byte) (seq >>> (i * 8));
+    }
+    header[12] = flag;
+  }
+
+  // Marks the record delivered. A segment left with no unacknowledged records is wiped.
+  // Returns false if there is no such record, e.g. it was acknowledged already.
+  public synchronized boolean acknowledge(long seq) {
+    for (int i = 0; i < segments.length; i++) {
+      if (unacknowledged[i] == 0 || seq < firstSeqs[i] || seq > lastSeqs[i]) {
+        continue;
+      }
+      MappedByteBuffer buffer = segments[i];
+      for (int pos = SEGMENT_HEADER; pos < ends[i]; pos += RECORD_OVERHEAD + buffer.getInt(pos + 4)) {
+        if (buffer.getLong(pos + 8) != seq) {
+          continue;
+        }
+        if (buffer.get(pos + ACK_OFFSET) != 0) {
+          return false;
+        }
+        buffer.put(pos + ACK_OFFSET, (byte) 1);
+        if (--unacknowledged[i] == 0) {
+          //the segment being written to restarts empty, others wait to be reused
+          wipe(i, i == current ? nextSeq : 0);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Zero fills the written part of the segment, frames included, and marks it started at start
+  private void wipe(int segment, long start) {
+    MappedByteBuffer buffer = segments[segment];
+    buffer.position(0);
+    while (buffer.position() < dirty[segment]) {
+      buffer.put(ZEROS, 0, Math.min(ZEROS.length, dirty[segment] - buffer.position()));
+    }
+    buffer.putLong(0, start);
+    ends[segment] = SEGMENT_HEADER;
+    dirty[segment] = SEGMENT_HEADER;
+    firstSeqs[segment] = -1;
+    lastSeqs[segment] = -1;
+    unacknowledged[segment] = 0;
+  }
+
+  // Visits the unacknowledged records, oldest first. Returns how many there were.
+  public synchronized int replay(Visitor visitor) {
+    int count = 0;
+    long after = 0;
+    for (;;) {
+      //next segment by sequence number; there are only a few
+      int segment = -1;
+      for (int i = 0; i < segments.length; i++) {
+        if (unacknowledged[i] > 0 && firstSeqs[i] > after
+            && (segment < 0 || firstSeqs[i] < firstSeqs[segment])) {
+          segment = i;
+        }
+      }
+      if (segment < 0) {
+        return count;
+      }
+      after = firstSeqs[segment];
+      MappedByteBuffer buffer = segments[segment];
+      for (int pos = SEGMENT_HEADER; pos < ends[segment]; ) {
+        int length = buffer.getInt(pos + 4);
+        if (buffer.get(pos + ACK_OFFSET) == 0) {
+          buffer.position(pos + RECORD_HEADER);
+          buffer.get(scratch, 0, length);
+          visitor.visit(buffer.getLong(pos + 8), buffer.get(pos + 16), scratch, length);
+          Arrays.fill(scratch, 0, length, (byte) 0);
+          count++;
+        }
+        pos += RECORD_OVERHEAD + length;
+      }
+    }
+  }
+
+  // Records not acknowledged yet
+  public synchronized int getPending() {
+    int pending = 0;
+    for (int count : unacknowledged) {
+      pending += count;
+    }
+    return pending;
+  }
+
+  // Writes the mapped pages to storage. Slow, keep it off the swipe path.
+  public synchronized void sync() {
+    for (MappedByteBuffer buffer : segments) {
+      buffer.force();
+    }
+  }
+}
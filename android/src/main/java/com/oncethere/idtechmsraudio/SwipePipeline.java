@@ -0,0 +1,132 @@
+package com.oncethere.idtechmsraudio;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Processes card data off the reader thread, through stages registered from Java.
+ *
+ * Swipes are handed over through a bounded single-producer/single-consumer ring: offer() must
+ * only be called from one thread (the reader thread), and the stages all run on the pipeline's
+ * own worker. Ring slots are pre-allocated SwipeContexts, so a swipe only costs a frame copy.
+ * Stages run in registration order; see SwipeStages for the built-in ones.
+ */
+public class SwipePipeline {
+  public static final int DEFAULT_CAPACITY = 16;
+
+  private final SwipeContext[] slots;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong(); //next slot to process, written by the worker
+  private final AtomicLong tail = new AtomicLong(); //next slot to fill, written by the producer
+  private final AtomicLong dropped = new AtomicLong(); //swipes refused because the ring was full
+
+  private final List<SwipeStage> stages = new CopyOnWriteArrayList<>();
+  private final String name;
+  private volatile Thread worker = null;
+  private volatile boolean running = false;
+
+  public SwipePipeline(String name) {
+    this(name, DEFAULT_CAPACITY);
+  }
+
+  // capacity is rounded up to a power of two
+  public SwipePipeline(String name, int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.name = name;
+    this.slots = new SwipeContext[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new SwipeContext();
+    }
+    this.mask = size - 1;
+  }
+
+  public void addStage(SwipeStage stage) {
+    stages.add(stage);
+  }
+
+  // Inserts stage at index, e.g. 0 to run it before the built-in stages
+  public void addStage(int index, SwipeStage stage) {
+    stages.add(index, stage);
+  }
+
+  // Inserts stage right before the given one, or at the end if that is not registered
+  public synchronized void addStageBefore(SwipeStage before, SwipeStage stage) {
+    int index = stages.indexOf(before);
+    stages.add(index < 0 ? stages.size() : index, stage);
+  }
+
+  public boolean removeStage(SwipeStage stage) {
+    return stages.remove(stage);
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, name);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  // Stops the worker. Swipes still queued are discarded.
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(worker);
+    worker = null;
+  }
+
+  // Queues a copy of cardData. Returns false if the pipeline is full or stopped.
+  public boolean offer(byte flag, byte[] cardData) {
+    if (!running) {
+      return false;
+    }
+    final long t = tail.get();
+    if (t - head.get() >= slots.length) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    slots[(int) (t & mask)].set(flag, cardData);
+    tail.lazySet(t + 1);
+    LockSupport.unpark(worker);
+    return true;
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private void drain() {
+    while (running) {
+      final long h = head.get();
+      if (h == tail.get()) {
+        LockSupport.park(this);
+        continue;
+      }
+      SwipeContext swipe = slots[(int) (h & mask)];
+      try {
+        for (SwipeStage stage : stages) {
+          if (!stage.process(swipe)) {
+            break;
+          }
+        }
+      } catch (RuntimeException e) {
+        //one bad swipe or stage must not take the worker down
+        e.printStackTrace();
+      } finally {
+        swipe.clear();
+        head.lazySet(h + 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package com.oncethere.idtechmsraudio;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Continuous swipe mode: starts the next swipe as soon as the last one ended, without JS.
+ *
+ * The module reports how each swipe ended. Card data and timeouts re-arm right away, failures
+ * after a backoff that doubles up to maxBackoffMs and resets with the next card data. No two
+ * re-arms are less than minIntervalMs apart, so a reader stuck failing cannot spin the SDK.
+ * All methods, and Target.rearm(), run on the handler's thread.
+ */
+public class SwipeRearmer {
+  public interface Target {
+    // Starts a swipe. Returns false if the SDK refused, which counts as a failure.
+    boolean rearm();
+  }
+
+  private final Handler handler;
+  private final Target target;
+
+  private boolean running = false;
+  private int minIntervalMs = 0;
+  private int backoffMs = 0;
+  private int maxBackoffMs = 0;
+  private int currentBackoffMs = 0;
+  private long lastRearmAt = 0; //SystemClock.uptimeMillis()
+
+  private final Runnable rearmRunnable = new Runnable() {
+    @Override
+    public void run() {
+      if (!running) {
+        return;
+      }
+      lastRearmAt = SystemClock.uptimeMillis();
+      if (!target.rearm()) {
+        onFailure();
+      }
+    }
+  };
+
+  public SwipeRearmer(Handler handler, Target target) {
+    this.handler = handler;
+    this.target = target;
+  }
+
+  public void start(int minIntervalMs, int backoffMs, int maxBackoffMs) {
+    this.minIntervalMs = Math.max(0, minIntervalMs);
+    this.backoffMs = Math.max(1, backoffMs);
+    this.maxBackoffMs = Math.max(this.backoffMs, maxBackoffMs);
+    currentBackoffMs = this.backoffMs;
+    running = true;
+    schedule(0);
+  }
+
+  public void stop() {
+    running = false;
+    handler.removeCallbacks(rearmRunnable);
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public void onCardData() {
+    currentBackoffMs = backoffMs;
+    schedule(0);
+  }
+
+  public void onTimeout() {
+    schedule(0);
+  }
+
+  // Also used for a reader that connected again
+  public void onConnected() {
+    schedule(0);
+  }
+
+  public void onFailure() {
+    schedule(currentBackoffMs);
+    currentBackoffMs = (int) Math.min((long) currentBackoffMs * 2, maxBackoffMs);
+  }
+
+  private void schedule(long delayMs) {
+    if (!running) {
+      return;
+    }
+    handler.removeCallbacks(rearmRunnable);
+    long earliest = lastRearmAt + minIntervalMs - SystemClock.uptimeMillis();
+    handler.postDelayed(rearmRunnable, Math.max(delayMs, earliest));
+  }
+}
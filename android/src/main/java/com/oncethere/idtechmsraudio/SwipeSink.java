@@ -0,0 +1,12 @@
+package com.oncethere.idtechmsraudio;
+
+import java.io.IOException;
+
+// Destination of a SwipeExporter. Called on the exporter's worker, one batch at a time.
+public interface SwipeSink {
+  // A batch that throws is counted as failed and not retried
+  void write(SwipeBatch batch) throws IOException;
+
+  // Called once when the exporter stops, after the last batch
+  void close() throws IOException;
+}
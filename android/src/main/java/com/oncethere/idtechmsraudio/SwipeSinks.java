@@ -0,0 +1,88 @@
+package com.oncethere.idtechmsraudio;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Built-in SwipeSinks. Both write batches in capture format, one write per batch.
+public final class SwipeSinks {
+  private SwipeSinks() {}
+
+  /**
+   * Appends batches to a file, which can be read back with SwipeCaptureReplay. With sync, every
+   * batch is flushed to storage before the next one is taken.
+   */
+  public static class FileSink implements SwipeSink {
+    private final File file;
+    private final boolean sync;
+    private FileOutputStream out = null;
+
+    public FileSink(File file, boolean sync) {
+      this.file = file;
+      this.sync = sync;
+    }
+
+    @Override
+    public void write(SwipeBatch batch) throws IOException {
+      if (out == null) {
+        out = new FileOutputStream(file, true);
+      }
+      out.write(batch.getData(), 0, batch.getLength());
+      if (sync) {
+        out.getFD().sync();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (out != null) {
+        out.close();
+        out = null;
+      }
+    }
+  }
+
+  /**
+   * Streams batches to a local (Unix domain) socket in the abstract namespace, e.g. to a companion
+   * process on a kiosk. Connects on the first batch, and again on the next one after an error.
+   */
+  public static class LocalSocketSink implements SwipeSink {
+    private final String name;
+    private LocalSocket socket = null;
+    private OutputStream out = null;
+
+    public LocalSocketSink(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void write(SwipeBatch batch) throws IOException {
+      try {
+        if (socket == null) {
+          socket = new LocalSocket();
+          socket.connect(new LocalSocketAddress(name));
+          out = socket.getOutputStream();
+        }
+        out.write(batch.getData(), 0, batch.getLength());
+        out.flush();
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      LocalSocket socket = this.socket;
+      this.socket = null;
+      out = null;
+      if (socket != null) {
+        socket.close();
+      }
+    }
+  }
+}
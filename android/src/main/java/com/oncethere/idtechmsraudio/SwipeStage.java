@@ -0,0 +1,7 @@
+package com.oncethere.idtechmsraudio;
+
+// One step of the SwipePipeline. Runs on the pipeline worker, one swipe at a time.
+public interface SwipeStage {
+  // Returns false to drop the swipe; later stages then do not see it
+  boolean process(SwipeContext swipe);
+}
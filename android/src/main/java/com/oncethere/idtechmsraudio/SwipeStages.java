@@ -0,0 +1,153 @@
+package com.oncethere.idtechmsraudio;
+
+// Built-in SwipePipeline stages, in the order the module registers them before its emit stage.
+public final class SwipeStages {
+  private SwipeStages() {}
+
+  // Drops empty frames and frames longer than the reader can produce
+  public static final SwipeStage VALIDATE = new SwipeStage() {
+    @Override
+    public boolean process(SwipeContext swipe) {
+      return swipe.length > 0 && swipe.length <= UmFrameAssembler.MAX_FRAME_LENGTH;
+    }
+  };
+
+  // Indexes the frame into swipe.view. Invalid frames carry on, the event reports them as such.
+  public static final SwipeStage PARSE = new SwipeStage() {
+    @Override
+    public boolean process(SwipeContext swipe) {
+      swipe.view.parse(swipe.frame, 0, swipe.length);
+      swipe.parsed = true;
+      return true;
+    }
+  };
+
+  /**
+   * Drops swipes whose card data was already seen within options.dedupeWindowMs, or only flags
+   * them with swipe.duplicate if options.dropDuplicates is off. Runs after PARSE so encrypted
+   * frames can be identified by KSN and encrypted tracks, see SwipeDedupeWindow.
+   */
+  public static class DedupeStage implements SwipeStage {
+    private final ReaderOptions options;
+    private final ReaderMetrics metrics;
+    private final SwipeDedupeWindow window = new SwipeDedupeWindow();
+
+    public DedupeStage(ReaderOptions options, ReaderMetrics metrics) {
+      this.options = options;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public boolean process(SwipeContext swipe) {
+      final int windowMs = options.dedupeWindowMs;
+      if (windowMs <= 0 || !swipe.parsed) {
+        return true;
+      }
+      long hash = SwipeDedupeWindow.hashOf(swipe.view, swipe.frame, swipe.length);
+      if (!window.isDuplicate(hash, swipe.receivedAt, windowMs * 1000000L)) {
+        return true;
+      }
+      metrics.increment(ReaderMetrics.DUPLICATES);
+      swipe.duplicate = true;
+      return !options.dropDuplicates;
+    }
+  }
+
+  /**
+   * Appends valid encrypted frames to the swipe journal, if one is set, and stores their sequence
+   * number in swipe.seq for the event. Clear card data is never written to storage.
+   */
+  public static class JournalStage implements SwipeStage {
+    private final ReaderMetrics metrics;
+    private volatile SwipeJournal journal = null;
+
+    public JournalStage(ReaderMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    public void setJournal(SwipeJournal journal) {
+      this.journal = journal;
+    }
+
+    @Override
+    public boolean process(SwipeContext swipe) {
+      SwipeJournal journal = this.journal;
+      if (journal == null || !swipe.parsed || swipe.duplicate || !swipe.view.isValid() || !swipe.view.isEncrypted()) {
+        return true;
+      }
+      swipe.seq = journal.append(swipe.flag, swipe.frame, 0, swipe.length);
+      if (swipe.seq < 0) {
+        metrics.increment(ReaderMetrics.JOURNAL_FULL);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Masks the clear tracks of unencrypted frames in place, the way encrypting readers mask their
+   * clear tracks: the PAN keeps its first 6 and last 4 digits, expiry and service code stay, and
+   * everything else, the cardholder name included, is replaced with '*'. Encrypted frames are
+ * already masked by the reader.
+   */
+  public static class MaskStage implements SwipeStage {
+    private static final byte MASK = '*';
+    private final ReaderOptions options;
+
+    public MaskStage(ReaderOptions options) {
+      this.options = options;
+    }
+
+    @Override
+    public boolean process(SwipeContext swipe) {
+      if (!options.maskClearTracks || !swipe.parsed || swipe.view.isEncrypted()) {
+        return true;
+      }
+      for (int i = 0; i < 3; i++) {
+        int field = UmCardDataView.TRACK1 + i;
+        if (swipe.view.hasField(field)) {
+          //region includes both sentinels
+          maskTrack(swipe.frame, swipe.view.offsetOf(field) + 1, swipe.view.offsetOf(field) + swipe.view.lengthOf(field) - 1);
+        }
+      }
+      return true;
+    }
+
+    // Masks track content in [start, end)
+    static void maskTrack(byte[] track, int start, int end) {
+      //track 1 starts with a format code, then the PAN up to '^'; track 2 has the PAN up to '='
+      int panStart = (start < end && track[start] >= 'A' && track[start] <= 'Z') ? start + 1 : start;
+      int panEnd = indexOf(track, panStart, end, (byte) '^', (byte) '=');
+      if (panEnd < 0) {
+        //not a financial track layout, keep only what could be a BIN
+        mask(track, Math.min(start + 6, end), end);
+        return;
+      }
+      mask(track, Math.min(panStart + 6, panEnd), Math.min(Math.max(panEnd - 4, panStart + 6), panEnd));
+
+      int expiry = panEnd + 1;
+      if (track[panEnd] == '^') {
+        //the name, up to the second '^'
+        int nameEnd = indexOf(track, expiry, end, (byte) '^', (byte) '^');
+        mask(track, expiry, nameEnd < 0 ? end : nameEnd);
+        expiry = nameEnd < 0 ? end : nameEnd + 1;
+      }
+      //YYMM and the service code
+      mask(track, Math.min(expiry + 7, end), end);
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte a, byte b) {
+      for (int i = from; i < to; i++) {
+        if (bytes[i] == a || bytes[i] == b) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static void mask(byte[] bytes, int from, int to) {
+      for (int i = from; i < to; i++) {
+        bytes[i] = MASK;
+      }
+    }
+  }
+}
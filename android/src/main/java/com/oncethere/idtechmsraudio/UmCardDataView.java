@@ -0,0 +1,277 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Zero-copy view over a raw swipe frame.
+ *
+ * The frame is validated once and every field is recorded as an (offset, length) pair
+ * into the original byte array. Nothing is copied until a caller asks for it, and one
+ * instance can be re-used for any number of frames.
+ */
+public final class UmCardDataView {
+  //Field indexes into the region table
+  public static final int TRACK1 = 0;
+  public static final int TRACK2 = 1;
+  public static final int TRACK3 = 2;
+  public static final int TRACK1_ENCRYPTED = 3;
+  public static final int TRACK2_ENCRYPTED = 4;
+  public static final int TRACK3_ENCRYPTED = 5;
+  public static final int SERIAL_NUMBER = 6;
+  public static final int KSN = 7;
+  public static final int FIELD_COUNT = 8;
+
+  static final int SERIAL_NUMBER_LENGTH = 10;
+  static final int KSN_LENGTH = 10;
+
+  //offset at [field * 2], length at [field * 2 + 1]. Offset is -1 if the field is absent.
+  private final int[] regions = new int[FIELD_COUNT * 2];
+
+  private byte[] byteData;
+  private int frameOffset;
+  private int frameLength;
+  private boolean isValid;
+  private boolean isEncrypted;
+  private boolean isAesEncrypted;
+  private int cardType;
+  private int trackStatus;
+  private UmTrackTokenizer tokenizer = new UmTrackTokenizer();
+
+  public UmCardDataView() {
+    reset(null);
+  }
+
+  // Whether the tracks of non-encrypting readers are followed by their LRC character
+  public void setExpectLrc(boolean lrc) {
+    tokenizer = new UmTrackTokenizer(lrc);
+  }
+
+  // Validates and indexes cardData. Returns isValid().
+  public boolean parse(byte[] cardData) {
+    return parse(cardData, 0, cardData == null ? 0 : cardData.length);
+  }
+
+  // Validates and indexes the frame held in cardData[offset, offset + length). Returns isValid().
+  public boolean parse(byte[] cardData, int offset, int length) {
+    reset(cardData);
+    if (cardData == null || length < 1)
+      return false;
+    frameOffset = offset;
+    frameLength = length;
+
+    //is valid encrypted swipe?
+    if (cardData[offset] == 0x02) {
+      isEncrypted = true;
+      isValid = parseEncrypted(cardData, offset, length);
+    }
+    //is valid unencrypted swipe?
+    else {
+      isEncrypted = false;
+      isValid = parseUnencrypted(cardData, offset, length);
+    }
+    return isValid;
+  }
+
+  private void reset(byte[] cardData) {
+    byteData = cardData;
+    frameOffset = 0;
+    frameLength = 0;
+    isValid = false;
+    isEncrypted = false;
+    isAesEncrypted = false;
+    cardType = -1;
+    trackStatus = -1;
+    for (int i = 0; i < FIELD_COUNT; i++) {
+      regions[i * 2] = -1;
+      regions[i * 2 + 1] = 0;
+    }
+  }
+
+  private void setRegion(int field, int offset, int length) {
+    regions[field * 2] = offset;
+    regions[field * 2 + 1] = length;
+  }
+
+  static boolean isBitSet(byte abyte, int bitIndex) {
+    return (abyte & (1 << bitIndex)) != 0;
+  }
+
+  // Indexes relative to the start of the frame; regions are stored as absolute array offsets.
+  private boolean parseEncrypted(byte[] frame, int base, int len) {
+    //frame layout and both checks, see UmFrameVerifier
+    if (!UmFrameVerifier.verify(frame, base, len))
+      return false;
+
+    //everything before CheckXOR CheckSUM ETX
+    final int usableLen = len - 3;
+    //header is 10 bytes, tracks follow it
+    if (10 > usableLen)
+      return false;
+    final byte status1 = frame[base + 8];
+    final byte status2 = frame[base + 9];
+
+    //get track1, track2, track3 length
+    cardType = frame[base + 3] & 0xFF;
+    trackStatus = frame[base + 4] & 0xFF;
+    final int trackLen1 = frame[base + 5] & 0xFF;
+    final int trackLen2 = frame[base + 6] & 0xFF;
+    final int trackLen3 = frame[base + 7] & 0xFF;
+
+    //get masked tracks
+    int idx = 10;
+    for (int i = 0; i < 3; i++) {
+      int trackLen = (i == 0 ? trackLen1 : (i == 1 ? trackLen2 : trackLen3));
+      //skip if len is 0 or presence flag not set
+      if (trackLen == 0 || !isBitSet(status1, i))
+        continue;
+      if (idx + trackLen > usableLen)
+        return false;
+      setRegion(TRACK1 + i, base + idx, trackLen);
+      idx += trackLen;
+    }
+    final int trackLensSum = idx - 10;
+
+    //determine encryption type (TDES or AES)
+    int encType = (status1 >> 4) & 0x03;
+    //if the lowest significant bit of the high nibble is high, the encrypted track output is AES
+    if (encType == 0x00)
+      isAesEncrypted = false;
+    else if (encType == 0x01)
+      isAesEncrypted = true;
+    else
+      return false;
+
+    //get encrypted section. Each track is padded to the cipher block size.
+    final int blockSize = (isAesEncrypted ? 16 : 8);
+    for (int i = 0; i < 3; i++) {
+      int trackLen = (i == 0 ? trackLen1 : (i == 1 ? trackLen2 : trackLen3));
+      int encLen = (trackLen + blockSize - 1) / blockSize * blockSize;
+      //skip if len is 0 or presence flag not set
+      if (encLen == 0 || !isBitSet(status2, i))
+        continue;
+      if (idx + encLen > usableLen)
+        return false;
+      setRegion(TRACK1_ENCRYPTED + i, base + idx, encLen);
+      idx += encLen;
+    }
+    final int tracksEnd = idx;
+
+    //get KSN. Only present when the KSN flag and at least one encrypted track flag are set.
+    if (isBitSet(status2, 7) && (isBitSet(status2, 0) || isBitSet(status2, 1) || isBitSet(status2, 2))) {
+      int ksnStart = usableLen - KSN_LENGTH;
+      if (ksnStart < tracksEnd)
+        return false;
+      setRegion(KSN, base + ksnStart, KSN_LENGTH);
+    }
+
+    //get serial number, which sits right before the KSN
+    if (isBitSet(status1, 7)) {
+      int serialStart = usableLen - SERIAL_NUMBER_LENGTH - (hasField(KSN) ? KSN_LENGTH : 0);
+      if (serialStart < tracksEnd)
+        return false;
+      setRegion(SERIAL_NUMBER, base + serialStart, SERIAL_NUMBER_LENGTH);
+    }
+
+    //a frame without any track is an imperfect swipe
+    return trackLensSum > 0 || tracksEnd > 10 + trackLensSum;
+  }
+
+  private boolean parseUnencrypted(byte[] bytes, int offset, int length) {
+    final boolean valid = tokenizer.tokenize(bytes, offset, length);
+    final int tracks = Math.min(tokenizer.getTrackCount(), UmTrackTokenizer.MAX_TRACKS);
+    for (int i = 0; i < tracks; i++) {
+      setRegion(TRACK1 + i, tokenizer.startOf(i), tokenizer.lengthOf(i));
+    }
+    return valid;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Accessors
+
+  // Array holding the frame. Field offsets are absolute indexes into it.
+  public byte[] getByteData() {
+    return byteData;
+  }
+
+  public int getFrameOffset() {
+    return frameOffset;
+  }
+
+  public int getFrameLength() {
+    return frameLength;
+  }
+
+  //All available fields were successfully parsed from the raw data
+  public boolean isValid() {
+    return isValid;
+  }
+
+  //Whether the output is from an encrypting reader or a non-encrypting reader
+  public boolean isEncrypted() {
+    return isEncrypted;
+  }
+
+  //Only valid if isEncrypted()==TRUE. If true, AES cipher is used, otherwise it's TDES
+  public boolean isAesEncrypted() {
+    return isAesEncrypted;
+  }
+
+  //Card encode type byte of encrypted output, -1 otherwise
+  public int getCardType() {
+    return cardType;
+  }
+
+  //Track status byte of encrypted output, -1 otherwise
+  public int getTrackStatus() {
+    return trackStatus;
+  }
+
+  //Why the tracks of unencrypted output did not parse, see UmTrackTokenizer.ERR_*
+  public int getTrackError() {
+    return isEncrypted || frameLength < 1 ? UmTrackTokenizer.ERR_NONE : tokenizer.getError();
+  }
+
+  //Offset in getByteData() of that error, -1 if there was none
+  public int getTrackErrorOffset() {
+    return isEncrypted || frameLength < 1 ? -1 : tokenizer.getErrorOffset();
+  }
+
+  public boolean hasField(int field) {
+    return regions[field * 2] >= 0;
+  }
+
+  // Offset of the field in getByteData(), or -1 if absent
+  public int offsetOf(int field) {
+    return regions[field * 2];
+  }
+
+  // Length of the field, 0 if absent
+  public int lengthOf(int field) {
+    return regions[field * 2 + 1];
+  }
+
+  // Read-only slice sharing the raw frame, or null if absent
+  public ByteBuffer slice(int field) {
+    if (!hasField(field))
+      return null;
+    return ByteBuffer.wrap(byteData, offsetOf(field), lengthOf(field)).slice().asReadOnlyBuffer();
+  }
+
+  // Copy of the field, or null if absent
+  public byte[] copyOf(int field) {
+    if (!hasField(field))
+      return null;
+    int offset = offsetOf(field);
+    return Arrays.copyOfRange(byteData, offset, offset + lengthOf(field));
+  }
+
+  // Copies the field into dst and returns its length, or -1 if absent
+  public int copyTo(int field, byte[] dst, int dstOffset) {
+    if (!hasField(field))
+      return -1;
+    int length = lengthOf(field);
+    System.arraycopy(byteData, offsetOf(field), dst, dstOffset, length);
+    return length;
+  }
+}
@@ -0,0 +1,177 @@
+package com.oncethere.idtechmsraudio;
+
+/**
+ * Re-assembles swipe frames from a byte stream that arrives in arbitrary chunks.
+ *
+ * Encrypted frames start with STX (0x02) and are sized by their little-endian length header.
+ * Unencrypted frames start with a track sentinel (0x25, 0x3B or 0x7F) and end with a carriage return.
+ * Bytes that do not belong to a frame are skipped, and a candidate frame that turns out to be
+ * malformed is re-scanned from its second byte, so the assembler resyncs on the next real frame.
+ *
+ * At most one frame is buffered. Completed frames are handed to the listener in the internal
+ * buffer, which is only valid for the duration of the callback.
+ */
+public class UmFrameAssembler {
+  public interface FrameListener {
+    void onFrame(byte[] frame, int offset, int length);
+  }
+
+  // Largest frame the 2 byte length header can describe
+  public static final int MAX_FRAME_LENGTH = 0xFFFF + 6;
+
+  private static final int STATE_IDLE = 0;
+  private static final int STATE_ENCRYPTED = 1;
+  private static final int STATE_UNENCRYPTED = 2;
+
+  private final FrameListener listener;
+  private final byte[] buffer;
+  private int count = 0; //bytes of the current candidate frame
+  private int state = STATE_IDLE;
+  private int expectedLength = -1; //total length of an encrypted frame once its header is read
+  private boolean failed = false; //current candidate frame is malformed
+  private long discardedBytes = 0;
+  private long frameCount = 0;
+
+  public UmFrameAssembler(FrameListener listener) {
+    this(MAX_FRAME_LENGTH, listener);
+  }
+
+  public UmFrameAssembler(int maxFrameLength, FrameListener listener) {
+    if (maxFrameLength < 6) {
+      throw new IllegalArgumentException("maxFrameLength must be at least 6");
+    }
+    this.listener = listener;
+    this.buffer = new byte[maxFrameLength];
+  }
+
+  public void feed(byte[] chunk) {
+    feed(chunk, 0, chunk.length);
+  }
+
+  public void feed(byte[] chunk, int offset, int length) {
+    while (length > 0) {
+      int used = step(chunk, offset, length);
+      offset += used;
+      length -= used;
+      if (failed) {
+        rescan();
+      }
+    }
+  }
+
+  // Drops any partial frame
+  public void reset() {
+    discardedBytes += count;
+    count = 0;
+    state = STATE_IDLE;
+    expectedLength = -1;
+    failed = false;
+  }
+
+  public long getDiscardedBytes() {
+    return discardedBytes;
+  }
+
+  public long getFrameCount() {
+    return frameCount;
+  }
+
+  // Consumes bytes until src is exhausted or the candidate frame fails. Returns the number of bytes consumed.
+  private int step(byte[] src, int offset, int length) {
+    final int end = offset + length;
+    int i = offset;
+    while (i < end) {
+      final byte b = src[i];
+      switch (state) {
+        case STATE_IDLE:
+          i++;
+          if (b == 0x02) {
+            state = STATE_ENCRYPTED;
+            expectedLength = -1;
+            buffer[count++] = b;
+          } else if (b == 0x25 || b == 0x3B || b == 0x7F) {
+            state = STATE_UNENCRYPTED;
+            buffer[count++] = b;
+          } else {
+            discardedBytes++;
+          }
+          break;
+
+        case STATE_ENCRYPTED:
+          if (expectedLength < 0) {
+            i++;
+            buffer[count++] = b;
+            if (count == 3) {
+              expectedLength = ((buffer[2] & 0xFF) << 8 | (buffer[1] & 0xFF)) + 6;
+              if (expectedLength > buffer.length) {
+                failed = true;
+                return i - offset;
+              }
+            }
+          } else {
+            //header is known, copy as much of the frame as is available
+            int n = Math.min(expectedLength - count, end - i);
+            System.arraycopy(src, i, buffer, count, n);
+            count += n;
+            i += n;
+            if (count == expectedLength) {
+              if (buffer[count - 1] != 0x03) {
+                failed = true;
+                return i - offset;
+              }
+              emit();
+            }
+          }
+          break;
+
+        case STATE_UNENCRYPTED:
+          if (b == 0x02 || count == buffer.length) {
+            //STX inside plain track data, or too long: re-scan without consuming this byte
+            failed = true;
+            return i - offset;
+          }
+          i++;
+          buffer[count++] = b;
+          if (b == 0x0D) {
+            emit();
+          }
+          break;
+      }
+    }
+    return i - offset;
+  }
+
+  private void emit() {
+    frameCount++;
+    listener.onFrame(buffer, 0, count);
+    count = 0;
+    state = STATE_IDLE;
+    expectedLength = -1;
+  }
+
+  // Drops the first byte of a failed candidate frame and re-scans the rest of it in place.
+  // Writes into the buffer always trail the reads, so the buffer can be its own source.
+  private void rescan() {
+    int from = 1;
+    int pending = count - 1;
+    do {
+      failed = false;
+      discardedBytes++;
+      count = 0;
+      state = STATE_IDLE;
+      expectedLength = -1;
+
+      while (pending > 0 && !failed) {
+        int used = step(buffer, from, pending);
+        from += used;
+        pending -= used;
+      }
+      if (failed) {
+        //keep the rest of this candidate together with the bytes not yet re-scanned
+        System.arraycopy(buffer, from, buffer, count, pending);
+        pending += count - 1;
+        from = 1;
+      }
+    } while (failed);
+  }
+}
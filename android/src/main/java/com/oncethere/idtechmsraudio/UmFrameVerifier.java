@@ -0,0 +1,97 @@
+package com.oncethere.idtechmsraudio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checks an encrypted swipe frame without parsing it.
+ *
+ * Format: STX(0x02) Length(little endian, 2B) Payload() CheckXOR CheckSUM ETX(0x03)
+ *
+ * verify() reads the payload eight bytes at a time. XOR folds naturally; for the sum, the bytes
+ * of each word are added pairwise into four 16-bit lanes, and the lanes are folded into one sum
+ * with a multiply every FOLD_WORDS words, before they could carry into each other.
+ */
+public final class UmFrameVerifier {
+  static final int STX = 0x02;
+  static final int ETX = 0x03;
+  static final int OVERHEAD = 6; //STX, length, CheckXOR, CheckSUM, ETX
+
+  private static final long LOW_BYTES = 0x00FF00FF00FF00FFL;
+  private static final long LANE_SUM = 0x0001000100010001L;
+  // Each word adds at most 2 * 255 to a lane. The fold needs three lanes to add up to less than 2^16.
+  private static final int FOLD_WORDS = 32;
+
+  private UmFrameVerifier() {}
+
+  public static boolean verify(byte[] frame) {
+    return frame != null && verify(frame, 0, frame.length);
+  }
+
+  public static boolean verify(byte[] frame, int offset, int length) {
+    if (frame == null || length < OVERHEAD || offset < 0 || offset + length > frame.length)
+      return false;
+    return verify(ByteBuffer.wrap(frame), offset, length);
+  }
+
+  // Verifies the frame in buffer[offset, offset + length), using absolute reads only
+  public static boolean verify(ByteBuffer buffer, int offset, int length) {
+    if (length < OVERHEAD)
+      return false;
+    final int end = offset + length;
+    // STX ETX
+    if (buffer.get(offset) != STX || buffer.get(end - 1) != ETX)
+      return false;
+    // Length
+    int payloadLen = (buffer.get(offset + 1) & 0xFF) | ((buffer.get(offset + 2) & 0xFF) << 8);
+    if (payloadLen + OVERHEAD != length)
+      return false;
+
+    // CheckXor and CheckSum over the payload
+    int i = offset + 3;
+    final int payloadEnd = end - 3;
+    long xor = 0;
+    int sum = 0;
+    while (payloadEnd - i >= 8) {
+      long lanes = 0;
+      final int blockEnd = Math.min(payloadEnd - 7, i + FOLD_WORDS * 8);
+      for (; i < blockEnd; i += 8) {
+        long word = buffer.getLong(i);
+        xor ^= word;
+        lanes += (word & LOW_BYTES) + ((word >>> 8) & LOW_BYTES);
+      }
+      sum += (int) ((lanes * LANE_SUM) >>> 48);
+    }
+    //fold the eight XOR bytes into one
+    xor ^= xor >>> 32;
+    xor ^= xor >>> 16;
+    xor ^= xor >>> 8;
+    int ckxor = (int) xor;
+    for (; i < payloadEnd; i++) {
+      byte b = buffer.get(i);
+      ckxor ^= b;
+      sum += b & 0xFF;
+    }
+    return (buffer.get(end - 2) & 0xFF) == (sum & 0xFF) && (buffer.get(end - 3) & 0xFF) == (ckxor & 0xFF);
+  }
+
+  // Byte at a time reference implementation of verify()
+  static boolean verifyBytewise(byte[] bytes, int offset, int len) {
+    if (len < OVERHEAD)
+      return false;
+    final int end = offset + len;
+    // STX ETX
+    if (bytes[offset] != STX || bytes[end - 1] != ETX)
+      return false;
+    // Length
+    int payloadLen = ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    if (payloadLen + OVERHEAD != len)
+      return false;
+    // CheckXor and CheckSum
+    int cksum = 0, ckxor = 0;
+    for (int i = offset + 3; i < end - 3; i++) {
+      ckxor ^= bytes[i];
+      cksum += bytes[i];
+    }
+    return (bytes[end - 2] & 0xFF) == (cksum & 0xFF) && (bytes[end - 3] & 0xFF) == (ckxor & 0xFF);
+  }
+}
@@ -0,0 +1,274 @@
+package com.oncethere.idtechmsraudio;
+
+/**
+ * PAN, cardholder name, expiry and service code of a parsed swipe.
+ *
+ * Track 1: '%' FormatCode PAN '^' Name '^' YYMM ServiceCode Discretionary '?'
+ * Track 2: ';' PAN '=' YYMM ServiceCode Discretionary '?'
+ *
+ * Fields are found by their separators in the track regions of a UmCardDataView and kept as
+ * offsets into its getByteData(); PAN, expiry and service code come from track 2 when present,
+ * the name always from track 1. Expiry or service code may be replaced by a separator when absent.
+ * Masked PANs of encrypting readers ('*' in place of digits) are accepted and reported as such.
+ * Nothing is allocated; copy fields out with the copy methods or read them through the offsets.
+ * One instance can be re-used for any number of swipes.
+ */
+public final class UmTrackFields {
+  static final int MAX_PAN_LENGTH = 19;
+  static final int MAX_NAME_LENGTH = 26;
+  private static final byte MASK = '*';
+
+  private byte[] data;
+  private int panOffset;
+  private int panLength;
+  private boolean panMasked;
+  private boolean panValid;
+  private int nameOffset;
+  private int nameLength;
+  private int expiryOffset;
+  private int serviceCodeOffset;
+
+  public UmTrackFields() {
+    reset(null);
+  }
+
+  // Extracts the fields of view's tracks 1 and 2. Returns hasPan().
+  public boolean extract(UmCardDataView view) {
+    reset(view.getByteData());
+    if (view.hasField(UmCardDataView.TRACK2)) {
+      parseTrack2(view.offsetOf(UmCardDataView.TRACK2), view.lengthOf(UmCardDataView.TRACK2));
+    }
+    if (view.hasField(UmCardDataView.TRACK1)) {
+      parseTrack1(view.offsetOf(UmCardDataView.TRACK1), view.lengthOf(UmCardDataView.TRACK1));
+    }
+    if (panOffset >= 0) {
+      panValid = !panMasked && luhn(data, panOffset, panLength);
+    }
+    return hasPan();
+  }
+
+  private void reset(byte[] data) {
+    this.data = data;
+    panOffset = -1;
+    panLength = 0;
+    panMasked = false;
+    panValid = false;
+    nameOffset = -1;
+    nameLength = 0;
+    expiryOffset = -1;
+    serviceCodeOffset = -1;
+  }
+
+  // Track region includes both sentinels
+  private void parseTrack2(int offset, int length) {
+    final int end = offset + length - 1; //end sentinel
+    if (length < 3 || data[offset] != ';') {
+      return;
+    }
+    int separator = indexOf(offset + 1, end, (byte) '=');
+    if (separator < 0 || !setPan(offset + 1, separator)) {
+      return;
+    }
+    parseExpiryAndServiceCode(separator + 1, end, (byte) '=');
+  }
+
+  private void parseTrack1(int offset, int length) {
+    final int end = offset + length - 1;
+    if (length < 4 || data[offset] != '%') {
+      return;
+    }
+    //format code, 'B' for financial cards, masked by some readers
+    byte format = data[offset + 1];
+    if (!(format >= 'A' && format <= 'Z') && format != MASK) {
+      return;
+    }
+    int panEnd = indexOf(offset + 2, end, (byte) '^');
+    if (panEnd < 0) {
+      return;
+    }
+    int nameEnd = indexOf(panEnd + 1, end, (byte) '^');
+    if (nameEnd < 0 || nameEnd - panEnd - 1 > MAX_NAME_LENGTH) {
+      return;
+    }
+    //names are padded with spaces
+    int nameLast = nameEnd;
+    while (nameLast > panEnd + 1 && data[nameLast - 1] == ' ') {
+      nameLast--;
+    }
+    if (nameLast > panEnd + 1) {
+      nameOffset = panEnd + 1;
+      nameLength = nameLast - nameOffset;
+    }
+    //track 2 is the better source, it has no free text to get wrong
+    if (panOffset < 0 && setPan(offset + 2, panEnd)) {
+      parseExpiryAndServiceCode(nameEnd + 1, end, (byte) '^');
+    }
+  }
+
+  private boolean setPan(int from, int to) {
+    final int length = to - from;
+    if (length < 1 || length > MAX_PAN_LENGTH) {
+      return false;
+    }
+    boolean masked = false;
+    for (int i = from; i < to; i++) {
+      byte b = data[i];
+      if (b == MASK) {
+        masked = true;
+      } else if (b < '0' || b > '9') {
+        return false;
+      }
+    }
+    panOffset = from;
+    panLength = length;
+    panMasked = masked;
+    return true;
+  }
+
+  // YYMM, or a separator if there is none, then the 3 digit service code, or again a separator
+  private void parseExpiryAndServiceCode(int from, int end, byte separator) {
+    int i = from;
+    if (i < end && data[i] == separator) {
+      i++;
+    } else if (isDigits(i, 4, end)) {
+      expiryOffset = i;
+      i += 4;
+    } else {
+      return;
+    }
+    if (isDigits(i, 3, end)) {
+      serviceCodeOffset = i;
+    }
+  }
+
+  private boolean isDigits(int from, int count, int end) {
+    if (from + count > end) {
+      return false;
+    }
+    for (int i = from; i < from + count; i++) {
+      if (data[i] < '0' || data[i] > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int indexOf(int from, int to, byte b) {
+    for (int i = from; i < to; i++) {
+      if (data[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // Luhn check over ASCII digits
+  static boolean luhn(byte[] digits, int offset, int length) {
+    if (length < 2) {
+      return false;
+    }
+    int sum = 0;
+    boolean doubled = false;
+    for (int i = offset + length - 1; i >= offset; i--) {
+      int d = digits[i] - '0';
+      if (doubled) {
+        d *= 2;
+        if (d > 9) d -= 9;
+      }
+      sum += d;
+      doubled = !doubled;
+    }
+    return sum % 10 == 0;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Accessors. Offsets are into the extracted view's getByteData(), -1 if the field is absent.
+
+  public boolean hasPan() {
+    return panOffset >= 0;
+  }
+
+  public int getPanOffset() {
+    return panOffset;
+  }
+
+  public int getPanLength() {
+    return panLength;
+  }
+
+  // PAN digits were replaced by the reader (or SwipeStages.MaskStage), isPanValid() is false then
+  public boolean isPanMasked() {
+    return panMasked;
+  }
+
+  // Unmasked PAN passing the Luhn check
+  public boolean isPanValid() {
+    return panValid;
+  }
+
+  public int getNameOffset() {
+    return nameOffset;
+  }
+
+  // Without the padding
+  public int getNameLength() {
+    return nameLength;
+  }
+
+  // YYMM
+  public int getExpiryOffset() {
+    return expiryOffset;
+  }
+
+  public int getExpiryYear() {
+    return expiryOffset < 0 ? -1 : digits(expiryOffset, 2);
+  }
+
+  public int getExpiryMonth() {
+    return expiryOffset < 0 ? -1 : digits(expiryOffset + 2, 2);
+  }
+
+  public int getServiceCodeOffset() {
+    return serviceCodeOffset;
+  }
+
+  public int getServiceCode() {
+    return serviceCodeOffset < 0 ? -1 : digits(serviceCodeOffset, 3);
+  }
+
+  // Copies the PAN into dst and returns its length, or -1 if absent
+  public int copyPan(char[] dst, int dstOffset) {
+    return copy(panOffset, panLength, dst, dstOffset);
+  }
+
+  public int copyName(char[] dst, int dstOffset) {
+    return copy(nameOffset, nameLength, dst, dstOffset);
+  }
+
+  // YYMM
+  public int copyExpiry(char[] dst, int dstOffset) {
+    return copy(expiryOffset, 4, dst, dstOffset);
+  }
+
+  public int copyServiceCode(char[] dst, int dstOffset) {
+    return copy(serviceCodeOffset, 3, dst, dstOffset);
+  }
+
+  private int copy(int offset, int length, char[] dst, int dstOffset) {
+    if (offset < 0) {
+      return -1;
+    }
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = (char) (data[offset + i] & 0xFF);
+    }
+    return length;
+  }
+
+  private int digits(int offset, int count) {
+    int value = 0;
+    for (int i = offset; i < offset + count; i++) {
+      value = value * 10 + (data[i] - '0');
+    }
+    return value;
+  }
+}
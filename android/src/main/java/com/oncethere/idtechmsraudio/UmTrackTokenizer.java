@@ -0,0 +1,170 @@
+package com.oncethere.idtechmsraudio;
+
+/**
+ * Splits the output of a non-encrypting reader into its tracks in one pass.
+ *
+ * Format: Track* CR, where an ISO track is '%' or ';' ... '?', optionally followed by its LRC
+ * character, and a JIS track is 0x7F ... 0x7F. Between tracks, each byte's class is looked up in a
+ * 256-entry table and selects what happens next; inside a track only the end sentinel matters, so
+ * the body is skipped with a plain scan for it. Track boundaries go into a primitive array and the
+ * first error is recorded with its offset. Nothing is allocated per frame; one instance can be
+ * re-used for any number of frames.
+ */
+public final class UmTrackTokenizer {
+  public static final int MAX_TRACKS = 3;
+
+  //Errors
+  public static final int ERR_NONE = 0;
+  public static final int ERR_UNEXPECTED_BYTE = 1; //byte other than a start sentinel or CR between tracks
+  public static final int ERR_UNTERMINATED_TRACK = 2; //data ended inside a track, offset is the track start
+  public static final int ERR_MISSING_CR = 3; //data ended without the trailing CR
+  public static final int ERR_TRAILING_DATA = 4; //bytes after the CR, offset is the CR
+  public static final int ERR_LRC_MISMATCH = 5; //offset is the LRC character
+  public static final int ERR_MISSING_LRC = 6; //data ended right after an end sentinel
+
+  //Byte classes
+  private static final byte C_OTHER = 0;
+  private static final byte C_ISO_START = 1; //'%' track 1, ';' tracks 2 and 3
+  private static final byte C_ISO_END = 2; //'?'
+  private static final byte C_JIS = 3; //0x7F, start and end of a JIS track
+  private static final byte C_CR = 4;
+
+  private static final byte[] CLASSES = new byte[256];
+
+  static {
+    CLASSES['%'] = C_ISO_START;
+    CLASSES[';'] = C_ISO_START;
+    CLASSES['?'] = C_ISO_END;
+    CLASSES[0x7F] = C_JIS;
+    CLASSES[0x0D] = C_CR;
+  }
+
+  private final boolean lrc;
+
+  //start at [track * 2], end (exclusive, after the end sentinel) at [track * 2 + 1]
+  private final int[] tracks = new int[MAX_TRACKS * 2];
+  private int trackCount;
+  private int jisTracks; //bit per track
+  private int error;
+  private int errorOffset;
+
+  public UmTrackTokenizer() {
+    this(false);
+  }
+
+  // lrc: every ISO end sentinel is followed by the track's LRC character, which is verified
+  public UmTrackTokenizer(boolean lrc) {
+    this.lrc = lrc;
+  }
+
+  // Tokenizes bytes[offset, offset + length). Returns true if the whole frame is well formed.
+  // Tracks before an error are still reported.
+  public boolean tokenize(byte[] bytes, int offset, int length) {
+    trackCount = 0;
+    jisTracks = 0;
+    error = ERR_NONE;
+    errorOffset = -1;
+
+    final int end = offset + length;
+    int i = offset;
+    while (i < end) {
+      final byte b = bytes[i];
+      switch (CLASSES[b & 0xFF]) {
+        case C_ISO_START:
+        case C_JIS: {
+          final boolean jis = b == 0x7F;
+          final byte endSentinel = jis ? (byte) 0x7F : (byte) '?';
+          final int start = i;
+          int xor = b;
+          i++;
+          if (lrc && !jis) {
+            while (i < end && bytes[i] != endSentinel) {
+              xor ^= bytes[i++];
+            }
+          } else {
+            while (i < end && bytes[i] != endSentinel) {
+              i++;
+            }
+          }
+          if (i == end) {
+            return fail(ERR_UNTERMINATED_TRACK, start);
+          }
+          addTrack(start, ++i, jis);
+          if (lrc && !jis) {
+            if (i == end) {
+              return fail(ERR_MISSING_LRC, end);
+            }
+            if (!lrcMatches(b, (xor ^ '?') & 0xFF, i - start, bytes[i] & 0xFF)) {
+              return fail(ERR_LRC_MISMATCH, i);
+            }
+            i++;
+          }
+          break;
+        }
+        case C_CR:
+          //a trailing carriage return ends the data
+          return i == end - 1 || fail(ERR_TRAILING_DATA, i);
+        default:
+          //only a start sentinel or the final CR may follow a track
+          return fail(ERR_UNEXPECTED_BYTE, i);
+      }
+    }
+    return fail(ERR_MISSING_CR, end);
+  }
+
+  // ISO 7811 LRC of characterCount characters folded into lrc. Track 1 ('%') uses 6-bit
+  // characters from 0x20, tracks 2 and 3 4-bit characters from 0x30.
+  static boolean lrcMatches(byte startSentinel, int lrc, int characterCount, int lrcChar) {
+    if (startSentinel == '%') {
+      //(c - 0x20) & 0x3F == (c ^ 0x20) & 0x3F, so the 0x20s fold into the parity of the count
+      int expected = (lrc ^ ((characterCount & 1) == 0 ? 0 : 0x20)) & 0x3F;
+      return lrcChar >= 0x20 && lrcChar < 0x60 && lrcChar - 0x20 == expected;
+    }
+    return lrcChar >= 0x30 && lrcChar < 0x40 && (lrcChar & 0x0F) == (lrc & 0x0F);
+  }
+
+  private void addTrack(int start, int end, boolean jis) {
+    if (trackCount < MAX_TRACKS) {
+      tracks[trackCount * 2] = start;
+      tracks[trackCount * 2 + 1] = end;
+      if (jis) {
+        jisTracks |= 1 << trackCount;
+      }
+    }
+    trackCount++;
+  }
+
+  private boolean fail(int error, int offset) {
+    this.error = error;
+    this.errorOffset = offset;
+    return false;
+  }
+
+  // Tracks found, including any beyond MAX_TRACKS that were not recorded
+  public int getTrackCount() {
+    return trackCount;
+  }
+
+  // Offset of the track's start sentinel
+  public int startOf(int track) {
+    return tracks[track * 2];
+  }
+
+  // Length of the track, both sentinels included
+  public int lengthOf(int track) {
+    return tracks[track * 2 + 1] - tracks[track * 2];
+  }
+
+  public boolean isJis(int track) {
+    return (jisTracks & (1 << track)) != 0;
+  }
+
+  public int getError() {
+    return error;
+  }
+
+  // Array offset the error was found at, -1 if there was none
+  public int getErrorOffset() {
+    return errorOffset;
+  }
+}
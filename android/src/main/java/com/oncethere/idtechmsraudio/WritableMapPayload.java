@@ -0,0 +1,54 @@
+package com.oncethere.idtechmsraudio;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+// EventPayload backed by a React Native WritableMap
+public class WritableMapPayload implements EventPayload {
+  private final WritableMap map;
+
+  public WritableMapPayload() {
+    this(Arguments.createMap());
+  }
+
+  public WritableMapPayload(WritableMap map) {
+    this.map = map;
+  }
+
+  public WritableMap getMap() {
+    return map;
+  }
+
+  public void putString(String key, String value) {
+    map.putString(key, value);
+  }
+
+  public void putInt(String key, int value) {
+    map.putInt(key, value);
+  }
+
+  public void putDouble(String key, double value) {
+    map.putDouble(key, value);
+  }
+
+  public void putBoolean(String key, boolean value) {
+    map.putBoolean(key, value);
+  }
+
+  public void putNull(String key) {
+    map.putNull(key);
+  }
+
+  public void putStringArray(String key, String[] values) {
+    WritableArray array = Arguments.createArray();
+    for (String value : values) {
+      if (value == null) {
+        array.pushNull();
+      } else {
+        array.pushString(value);
+      }
+    }
+    map.putArray(key, array);
+  }
+}
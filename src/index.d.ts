@@ -1,9 +1,28 @@
-export declare const activate: any, deactivate: any, swipe: any;
+export declare const activate: any, deactivate: any, suspend: any, swipe: any, startContinuousSwipe: any, stopContinuousSwipe: any, configure: any, listProfiles: any, exportProfiles: any, invalidateProfile: any, getMetrics: any, getState: any, acknowledgeSwipe: any, setTracing: any, dumpTrace: any, exportProfileCatalog: any, importProfileCatalog: any;
+export declare const EVENT_NAME = "IdTechUniMagEvent";
+export declare function addListener(listener: (event: any) => void): any;
 declare const _default: {
     activate: any;
     deactivate: any;
+    suspend: any;
     swipe: any;
+    startContinuousSwipe: any;
+    stopContinuousSwipe: any;
+    configure: any;
+    listProfiles: any;
+    exportProfiles: any;
+    invalidateProfile: any;
+    getMetrics: any;
+    getState: any;
+    acknowledgeSwipe: any;
+    setTracing: any;
+    dumpTrace: any;
+    exportProfileCatalog: any;
+    importProfileCatalog: any;
+    addListener: typeof addListener;
     parseSwipeData: any;
+    parseSwipeEvent: any;
+    decodePayload: any;
     READERS: any;
 };
 export default _default;
@@ -1,13 +1,41 @@
-import { NativeModules } from 'react-native';
-import { parseSwipeData } from './universal/parse';
+import { NativeModules, NativeEventEmitter } from 'react-native';
+import { parseSwipeData, parseSwipeEvent, decodePayload } from './universal/parse';
 import READERS from './universal/readers';
 
 export const {
   activate,
   deactivate,
+  suspend,
   swipe,
+  startContinuousSwipe,
+  stopContinuousSwipe,
+  configure,
+  listProfiles,
+  exportProfiles,
+  invalidateProfile,
+  getMetrics,
+  getState,
+  acknowledgeSwipe,
+  setTracing,
+  dumpTrace,
+  exportProfileCatalog,
+  importProfileCatalog,
 } = NativeModules.IDTECH_MSR_audio;
 
-export default { activate, deactivate, swipe, parseSwipeData, READERS };
+export const EVENT_NAME = 'IdTechUniMagEvent';
+
+// Subscribes to reader events. Batched events (see configure's batchSize) are delivered one by one.
+export function addListener(listener) {
+  const emitter = new NativeEventEmitter(NativeModules.IDTECH_MSR_audio);
+  return emitter.addListener(EVENT_NAME, (event) => {
+    if (event && event.type === 'event_batch') {
+      event.events.forEach(listener);
+    } else {
+      listener(event);
+    }
+  });
+}
+
+export default { activate, deactivate, suspend, swipe, startContinuousSwipe, stopContinuousSwipe, configure, listProfiles, exportProfiles, invalidateProfile, getMetrics, getState, acknowledgeSwipe, setTracing, dumpTrace, exportProfileCatalog, importProfileCatalog, addListener, parseSwipeData, parseSwipeEvent, decodePayload, READERS };
 
 export * from './universal/index';
@@ -178,7 +178,8 @@ export function parseUnencryptedSwipeData(data) {
     } else {
       if ((results.iso && byte !== 0x3F) || (!results.iso && byte !== 0x7F)) continue;
       else {
-        results.tracks[state.index] = data.toString('hex', state.start, dex + 1);
+        if (state.index < results.tracks.length) results.tracks[state.index] = data.toString('hex', state.start, dex + 1);
+        state.index += 1;
         state.start = dex + 1;
         state.outsideTrack = true;
       }
@@ -206,6 +207,32 @@ export function parseSwipeData(data, format = 'hex') {
   }
 }
 
+/**
+ *
+ * @param {object} event A `swipe_received` event. Events from `configure({ structuredSwipe: true })` are already parsed natively and are returned without the event fields, others are parsed from their `data` entry
+ */
+export function parseSwipeEvent(event) {
+  if (!event) return { valid: false };
+  if (event.parsed) {
+    const { originalType, type, message, parsed, data, encoding, trackType, ...swipe } = event;
+    // unencrypted swipes: the track type, under the key parseSwipeData() uses
+    if (trackType !== undefined) swipe.type = trackType;
+    return swipe;
+  }
+  return parseSwipeData(event.data, event.encoding || 'hex');
+}
+
+/**
+ *
+ * @param {object} event A `swipe_received` or `command_result` event
+ * @param {string} key The entry holding the payload, `data` for swipes and `result` for command results
+ * @returns {Buffer} The payload bytes, whichever `encoding` the event was sent with
+ */
+export function decodePayload(event, key = 'data') {
+  if (!event || event[key] == null) return null;
+  return Buffer.from(event[key], event.encoding || (key === 'result' ? 'latin1' : 'hex'));
+}
+
 function numberToBinary(number) {
   const string = number.toString(2);
   const nextGroupDiff = string.length % 8;
@@ -43,4 +43,111 @@ describe('parse.test', () => {
       track_status: 63,
     });
   });
+  it('returns natively parsed swipe events as they are', () => {
+    expect(testing.parseSwipeEvent({
+      originalType: 'umSwipe_receivedSwipe',
+      type: 'swipe_received',
+      message: 'Successful card swipe',
+      parsed: true,
+      valid: true,
+      encrypted: false,
+      tracks: ['2542343131313f', null, null],
+      card_type: 49,
+      track_status: 49,
+      iso: true,
+      trackType: 'ISO1',
+    })).toEqual({
+      valid: true,
+      encrypted: false,
+      tracks: ['2542343131313f', null, null],
+      card_type: 49,
+      track_status: 49,
+      iso: true,
+      type: 'ISO1',
+    });
+  });
+  // swipe_received events recorded with configure({ structuredSwipe: true, includeRawData: true })
+  const nativeEvents = {
+    aes: {
+      originalType: 'umSwipe_receivedSwipe',
+      type: 'swipe_received',
+      message: 'Successful card swipe',
+      parsed: true,
+      valid: true,
+      encrypted: true,
+      tracks: [
+        '252a353230332a2a2a2a2a2a2a2a373230355e4142524148414d53454e2f5354455048454e20202020202020205e313830382a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a3f2a',
+        '3b353230332a2a2a2a2a2a2a2a373230353d313830382a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a3f2a',
+        null,
+      ],
+      aes: true,
+      card_type: 128,
+      track_status: 31,
+      encryptedTracks: [
+        '66ae219667cdad7b1c8f794d4980f9e39cb12c8d76cc8eee3b9a5bf7502ef740334ea67b5733fe190c16667ee44011f27a4a23b80b894759f085c5c1488cbdf5c97865e7b5dc422359c7816a087d92a4',
+        '99526f1f4e01fe246254c6e8b53ee22de1f5b93c448dd73aae8adc21fc5dfd142a6a8a347cc1f9df9d231eac2e8d56bb',
+        null,
+      ],
+      ksn: '6299491457002060010b',
+      serial: '34323354313133383637',
+      pan: '5203********7205',
+      panMasked: true,
+      panValid: false,
+      name: 'ABRAHAMSEN/STEPHEN',
+      expiry: '1808',
+      serviceCode: null,
+      encoding: 'hex',
+      data: '021201801F4F28009383252A353230332A2A2A2A2A2A2A2A373230355E4142524148414D53454E2F5354455048454E20202020202020205E313830382A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A3F2A3B353230332A2A2A2A2A2A2A2A373230353D313830382A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A3F2A66AE219667CDAD7B1C8F794D4980F9E39CB12C8D76CC8EEE3B9A5BF7502EF740334EA67B5733FE190C16667EE44011F27A4A23B80B894759F085C5C1488CBDF5C97865E7B5DC422359C7816A087D92A499526F1F4E01FE246254C6E8B53EE22DE1F5B93C448DD73AAE8ADC21FC5DFD142A6A8A347CC1F9DF9D231EAC2E8D56BB343233543131333836376299491457002060010B5CBE03',
+    },
+    unencrypted: {
+      originalType: 'umSwipe_receivedSwipe',
+      type: 'swipe_received',
+      message: 'Successful card swipe',
+      parsed: true,
+      valid: true,
+      encrypted: false,
+      tracks: [
+        '2542343131313131313131313131313131315e43415244484f4c4445522f5445535420415e323531323130313030303030303030303030303030303030303030303030303f',
+        '3b343131313131313131313131313131313d32353132313031303030303030303030303030303f',
+        '3b3031313233343536373839303132333434353d373234373234313030303030303030303030303330333030585858583034303430303039393031303d2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a2a3d3d313d3030303030303030303030303030303f',
+      ],
+      card_type: 49,
+      track_status: 49,
+      iso: true,
+      trackType: 'ISO2',
+      pan: '4111111111111111',
+      panMasked: false,
+      panValid: true,
+      name: 'CARDHOLDER/TEST A',
+      expiry: '2512',
+      serviceCode: '101',
+      encoding: 'hex',
+      data: '2542343131313131313131313131313131315E43415244484F4C4445522F5445535420415E323531323130313030303030303030303030303030303030303030303030303F3B343131313131313131313131313131313D32353132313031303030303030303030303030303F3B3031313233343536373839303132333434353D373234373234313030303030303030303030303330333030585858583034303430303039393031303D2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A2A3D3D313D3030303030303030303030303030303F0D',
+    },
+  };
+  Object.keys(nativeEvents).forEach((frame) => {
+    it(`parses a swipe the same natively and in JS (${frame})`, () => {
+      const event = nativeEvents[frame];
+      // card fields only the native parser extracts
+      const { pan, panMasked, panValid, name, expiry, serviceCode, ...native } = testing.parseSwipeEvent(event);
+      expect(native.valid).toBe(true);
+      expect(native).toEqual(testing.parseSwipeEvent({ type: 'swipe_received', data: event.data }));
+      expect(native).toEqual(testing.parseSwipeData(event.data));
+    });
+  });
+  it('parses raw swipe events from their data', () => {
+    expect(testing.parseSwipeEvent({ type: 'swipe_received', data: '2542343131313F0D' })).toEqual(testing.parseSwipeData('2542343131313F0D'));
+  });
+  it('parses raw swipe events in their encoding', () => {
+    expect(testing.parseSwipeEvent({ type: 'swipe_received', encoding: 'base64', data: 'JUI0MTExPw0=' })).toEqual(testing.parseSwipeData('2542343131313F0D'));
+  });
+});
+
+describe('decodePayload', () => {
+  it('decodes each encoding to the same bytes', () => {
+    const bytes = Buffer.from('2542343131313F0D', 'hex');
+    expect(testing.decodePayload({ data: '2542343131313F0D' })).toEqual(bytes);
+    expect(testing.decodePayload({ encoding: 'base64', data: 'JUI0MTExPw0=' })).toEqual(bytes);
+    expect(testing.decodePayload({ encoding: 'latin1', result: '%B4111?\r' }, 'result')).toEqual(bytes);
+  });
 });